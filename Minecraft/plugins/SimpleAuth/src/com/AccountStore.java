@@ -0,0 +1,228 @@
+package com.simpleauth;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// In-memory view of the accounts. Credentials of every account stay resident in a compact index,
+// which is all /login and /register need. The rest of an account (saved state, legacy inventory and
+// location, skin) is read from storage when it is needed and kept in an LRU bounded by a byte budget,
+// so heap grows with the players actually seen rather than with every account ever registered.
+// Accounts in use are never evicted, so an online player's record is always at hand.
+// Main thread only, apart from the counters.
+public class AccountStore {
+    private static final Set<String> CREDENTIAL_FIELDS = Set.of("password", "salt", "superuser");
+
+    private record Credentials(String password, String salt, boolean superuser) {}
+
+    private static final class Profile {
+        final Map<String, Object> fields;
+        long bytes;
+
+        Profile(Map<String, Object> fields) {
+            this.fields = fields;
+            this.bytes = estimate(fields);
+        }
+    }
+
+    // A read in flight, plus anything written to the account while it was running
+    private record Loading(CompletableFuture<Map<String, Object>> result, Map<String, Object> writes) {}
+
+    private final Plugin plugin;
+    private final UserStorage storage;
+    private final long budgetBytes;
+    private final Predicate<String> pinned;
+
+    private final Map<String, Credentials> index = new HashMap<>();
+    private final LinkedHashMap<String, Profile> profiles = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final Map<String, Loading> loading = new HashMap<>();
+    private volatile long indexBytes; // written on the main thread, read by /metrics
+    private volatile long profileBytes;
+    private volatile int accountCount; // index and profiles sizes, for /metrics
+    private volatile int loadedCount;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountStore(Plugin plugin, UserStorage storage, long budgetBytes, Predicate<String> pinned) {
+        this.plugin = plugin;
+        this.storage = storage;
+        this.budgetBytes = budgetBytes;
+        this.pinned = pinned;
+    }
+
+    // Startup replay: keeps the credentials, the rest is left in storage
+    public void replay(String user, Map<String, Object> fields) {
+        putCredentials(user, fields);
+    }
+
+    public boolean exists(String user) {
+        Credentials c = index.get(user);
+        return c != null && c.password() != null;
+    }
+
+    public boolean contains(String user) {
+        return index.containsKey(user);
+    }
+
+    public String getPassword(String user) {
+        Credentials c = index.get(user);
+        return c == null ? null : c.password();
+    }
+
+    public String getSalt(String user) {
+        Credentials c = index.get(user);
+        return c == null ? null : c.salt();
+    }
+
+    // The account's other fields if they are in memory, null if they would have to be read first
+    public Map<String, Object> getIfLoaded(String user) {
+        Profile p = profiles.get(user);
+        return p == null ? null : p.fields;
+    }
+
+    // Completes on the main thread with the account's non-credential fields (empty for a new account).
+    // Concurrent loads of one account share a single read.
+    public CompletableFuture<Map<String, Object>> load(String user) {
+        Profile p = profiles.get(user);
+        if (p != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(p.fields);
+        }
+        misses.increment();
+        Loading inFlight = loading.get(user);
+        if (inFlight != null) return inFlight.result();
+
+        CompletableFuture<Map<String, Object>> read;
+        try {
+            read = storage.read(user);
+        } catch (RuntimeException e) {
+            // persistence lane full or shut down: fail this load, the next one tries again
+            plugin.getLogger().warning("Failed to read account " + user + ": " + e);
+            return CompletableFuture.failedFuture(e);
+        }
+        Loading l = new Loading(new CompletableFuture<>(), new HashMap<>());
+        loading.put(user, l);
+        read.whenComplete((fields, err) -> Bukkit.getScheduler().runTask(plugin, () -> {
+            loading.remove(user, l);
+            if (err != null) {
+                plugin.getLogger().warning("Failed to read account " + user + ": " + err);
+                l.result().completeExceptionally(err);
+                return;
+            }
+            Map<String, Object> loaded = new HashMap<>();
+            merge(loaded, fields);
+            merge(loaded, l.writes());
+            Profile profile = new Profile(loaded);
+            Profile old = profiles.put(user, profile);
+            if (old != null) profileBytes -= old.bytes;
+            profileBytes += profile.bytes;
+            evict();
+            loadedCount = profiles.size();
+            l.result().complete(profile.fields);
+        }));
+        return l.result();
+    }
+
+    // Applies a change made here or on a peer. Storage is written by the caller.
+    public void update(String user, Map<String, Object> fields) {
+        putCredentials(user, fields);
+        Loading l = loading.get(user);
+        if (l != null) l.writes().putAll(fields); // nulls included, they are removals
+        Profile p = profiles.get(user);
+        if (p == null) return; // not resident: storage alone has it, the next read picks it up
+        profileBytes -= p.bytes;
+        merge(p.fields, fields);
+        p.bytes = estimate(p.fields);
+        profileBytes += p.bytes;
+        evict();
+    }
+
+    // Least recently used first, skipping accounts in use. May stay above budget if everything is pinned.
+    private void evict() {
+        if (profileBytes <= budgetBytes) return;
+        Iterator<Map.Entry<String, Profile>> it = profiles.entrySet().iterator();
+        while (profileBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<String, Profile> e = it.next();
+            if (pinned.test(e.getKey())) continue;
+            it.remove();
+            profileBytes -= e.getValue().bytes;
+            evictions.increment();
+        }
+        loadedCount = profiles.size();
+    }
+
+    private void putCredentials(String user, Map<String, Object> fields) {
+        boolean touched = false;
+        for (String name : fields.keySet()) {
+            if (CREDENTIAL_FIELDS.contains(name)) {
+                touched = true;
+                break;
+            }
+        }
+        if (!touched && index.containsKey(user)) return;
+
+        Credentials old = index.get(user);
+        String password = old == null ? null : old.password();
+        String salt = old == null ? null : old.salt();
+        boolean superuser = old != null && old.superuser();
+        if (fields.containsKey("password")) password = (String) fields.get("password");
+        if (fields.containsKey("salt")) salt = (String) fields.get("salt");
+        if (fields.containsKey("superuser")) superuser = Boolean.TRUE.equals(fields.get("superuser"));
+
+        Credentials c = new Credentials(password, salt, superuser);
+        index.put(user, c);
+        accountCount = index.size();
+        if (old != null) indexBytes -= estimate(user, old);
+        indexBytes += estimate(user, c);
+    }
+
+    // Credentials are kept out of the profile, the index is their only in-memory copy
+    private static void merge(Map<String, Object> target, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> f : fields.entrySet()) {
+            if (CREDENTIAL_FIELDS.contains(f.getKey())) continue;
+            if (f.getValue() == null) target.remove(f.getKey());
+            else target.put(f.getKey(), f.getValue());
+        }
+    }
+
+    // Rough retained size on a 64-bit JVM with compressed oops and compact strings
+    private static long estimate(Map<String, Object> fields) {
+        long bytes = 64; // map and Profile
+        for (Map.Entry<String, Object> f : fields.entrySet()) {
+            bytes += 32 + stringBytes(f.getKey()); // entry + key
+            Object v = f.getValue();
+            if (v instanceof byte[] b) bytes += 16 + b.length;
+            else if (v instanceof String s) bytes += stringBytes(s);
+            else bytes += 16;
+        }
+        return bytes;
+    }
+
+    private static long estimate(String user, Credentials c) {
+        return 32 + 32 + stringBytes(user) + stringBytes(c.password()) + stringBytes(c.salt()); // entry, record, strings
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : 40 + s.length();
+    }
+
+    public int getAccountCount() { return accountCount; }
+    public int getLoadedCount() { return loadedCount; }
+    public long getIndexBytes() { return indexBytes; }
+    public long getProfileBytes() { return profileBytes; }
+    public long getBudgetBytes() { return budgetBytes; }
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+}
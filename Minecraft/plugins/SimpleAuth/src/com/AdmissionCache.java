@@ -0,0 +1,193 @@
+package com.simpleauth;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Who may connect at all, checked on AsyncPlayerPreLoginEvent so a refused connection never reaches
+// the main thread: no entity, no limbo, no chunk loads. Holds the IPs the supervisor has authorized
+// and the IPs and account names it has blocked, each with an expiry, so entries the supervisor
+// forgets to revoke age out by themselves. Only an IP can admit: in offline mode the client picks its
+// own name, so a name is good enough to refuse a connection but never to let one in.
+// The supervisor keeps it in sync with versioned deltas: a delta only applies on top of the version
+// it was built from, otherwise it is refused and the supervisor sends the full set instead.
+// Lookups are lock-free; updates are serialized.
+public class AdmissionCache {
+    public enum Decision { ADMIT, DENY_BLOCKED, DENY_UNKNOWN }
+
+    public static final class VersionMismatchException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        VersionMismatchException(long current) {
+            super("Delta does not apply to version " + current);
+        }
+    }
+
+    private final boolean enabled;
+    private final boolean openUntilSynced;
+    private final long defaultTtlMillis;
+    private final int maxEntries;
+    private final Set<String> alwaysAllow;
+
+    // "ip:<address>" / "account:<lowercase name>" -> expiry (epoch millis, the supervisor's clock is wall time)
+    private final Map<String, Long> allowed = new ConcurrentHashMap<>(); // ip keys only
+    private final Map<String, Long> blocked = new ConcurrentHashMap<>();
+    private volatile long version; // 0 until the first full sync
+    private volatile long lastSyncAt;
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder deniedBlocked = new LongAdder();
+    private final LongAdder deniedUnknown = new LongAdder();
+    private final LongAdder admittedUnsynced = new LongAdder();
+
+    public AdmissionCache(ConfigurationSection config) {
+        this.enabled = config != null && config.getBoolean("enabled", false);
+        this.openUntilSynced = config == null || config.getBoolean("openUntilSynced", true);
+        this.defaultTtlMillis = TimeUnit.SECONDS.toMillis(config == null ? 600 : config.getLong("ttlSeconds", 600));
+        this.maxEntries = config == null ? 10000 : config.getInt("maxEntries", 10000);
+        List<String> always = config == null ? List.of("127.0.0.1") : config.getStringList("alwaysAllow");
+        this.alwaysAllow = Set.copyOf(always);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Any thread
+    public Decision check(String ip, String account) {
+        if (!enabled || (ip != null && alwaysAllow.contains(ip))) {
+            admitted.increment();
+            return Decision.ADMIT;
+        }
+        long now = System.currentTimeMillis();
+        String ipKey = ipKey(ip);
+        String accountKey = accountKey(account);
+        if (live(blocked, ipKey, now) || live(blocked, accountKey, now)) {
+            deniedBlocked.increment();
+            return Decision.DENY_BLOCKED;
+        }
+        if (version == 0 && openUntilSynced) {
+            // nothing synced yet, e.g. the supervisor isn't up; don't lock everyone out
+            admittedUnsynced.increment();
+            admitted.increment();
+            return Decision.ADMIT;
+        }
+        if (live(allowed, ipKey, now)) {
+            admitted.increment();
+            return Decision.ADMIT;
+        }
+        deniedUnknown.increment();
+        return Decision.DENY_UNKNOWN;
+    }
+
+    // Applies a sync message from the supervisor:
+    //   {"full": true, "version": 7, "allow": [...], "block": [...]}              replaces everything
+    //   {"base": 7, "version": 8, "allow": [...], "block": [...], "revoke": [...]} applies on top of 7
+    // Entries are {"ip": "...", "account": "...", "ttlSeconds": 300}; either ip or account may be missing.
+    // The account of an allow entry is ignored, see above.
+    public synchronized long apply(JsonObject msg) throws VersionMismatchException {
+        long next = msg.get("version").getAsLong();
+        boolean full = msg.has("full") && msg.get("full").getAsBoolean();
+        if (!full) {
+            long base = msg.has("base") ? msg.get("base").getAsLong() : -1;
+            if (version == 0 || base != version) throw new VersionMismatchException(version);
+        }
+        long now = System.currentTimeMillis();
+        if (full) {
+            allowed.clear();
+            blocked.clear();
+        }
+        put(allowed, msg.getAsJsonArray("allow"), now, false);
+        put(blocked, msg.getAsJsonArray("block"), now, true);
+        JsonArray revoke = msg.getAsJsonArray("revoke");
+        if (revoke != null) {
+            for (JsonElement e : revoke) {
+                for (String key : keys(e.getAsJsonObject())) {
+                    allowed.remove(key);
+                    blocked.remove(key);
+                }
+            }
+        }
+        trim(allowed);
+        trim(blocked);
+        version = next;
+        lastSyncAt = now;
+        return version;
+    }
+
+    // Drops expired entries; run periodically off the main thread
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        allowed.values().removeIf(expiry -> expiry <= now);
+        blocked.values().removeIf(expiry -> expiry <= now);
+    }
+
+    private void put(Map<String, Long> target, JsonArray entries, long now, boolean accounts) {
+        if (entries == null) return;
+        for (JsonElement e : entries) {
+            JsonObject entry = e.getAsJsonObject();
+            long ttl = entry.has("ttlSeconds") ? TimeUnit.SECONDS.toMillis(entry.get("ttlSeconds").getAsLong()) : defaultTtlMillis;
+            if (accounts) {
+                for (String key : keys(entry)) target.put(key, now + ttl);
+            } else if (entry.has("ip")) {
+                target.put(ipKey(entry.get("ip").getAsString()), now + ttl);
+            }
+        }
+    }
+
+    // The supervisor is trusted, this only stops a runaway sync from growing the table without bound.
+    // Expired entries go first, then those closest to expiring (the oldest, as TTLs are similar).
+    private void trim(Map<String, Long> target) {
+        if (target.size() <= maxEntries) return;
+        sweep();
+        int excess = target.size() - maxEntries;
+        if (excess <= 0) return;
+        List<Map.Entry<String, Long>> byExpiry = new ArrayList<>(target.entrySet());
+        byExpiry.sort(Map.Entry.comparingByValue());
+        for (int i = 0; i < excess; i++) {
+            target.remove(byExpiry.get(i).getKey());
+        }
+    }
+
+    private static Set<String> keys(JsonObject entry) {
+        Set<String> keys = new HashSet<>(2);
+        if (entry.has("ip")) keys.add(ipKey(entry.get("ip").getAsString()));
+        if (entry.has("account")) keys.add(accountKey(entry.get("account").getAsString()));
+        return keys;
+    }
+
+    private static boolean live(Map<String, Long> map, String key, long now) {
+        if (key == null) return false;
+        Long expiry = map.get(key);
+        return expiry != null && expiry > now;
+    }
+
+    private static String ipKey(String ip) {
+        return ip == null ? null : "ip:" + ip;
+    }
+
+    private static String accountKey(String account) {
+        return account == null ? null : "account:" + account.toLowerCase(Locale.ROOT);
+    }
+
+    public long getVersion() { return version; }
+    public long getLastSyncAt() { return lastSyncAt; }
+    public int getAllowedCount() { return allowed.size(); }
+    public int getBlockedCount() { return blocked.size(); }
+
+    public long getAdmitted() { return admitted.sum(); }
+    public long getAdmittedUnsynced() { return admittedUnsynced.sum(); }
+    public long getDeniedBlocked() { return deniedBlocked.sum(); }
+    public long getDeniedUnknown() { return deniedUnknown.sum(); }
+}
@@ -0,0 +1,214 @@
+package com.simpleauth;
+
+import org.bukkit.plugin.Plugin;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// All plugin background work runs here, split into named lanes (http, supervisor, persistence, ...).
+// A lane is a bounded queue drained by a fixed number of virtual threads, so one workload can't
+// starve another and nothing queues without limit. When a lane is full the task is either rejected
+// (RejectedExecutionException, the caller decides what to do) or run by the caller, which slows the
+// producer down. Delayed and periodic tasks go through one timer thread that only hands them to their lane.
+// shutdown() closes the lanes in creation order, letting each drain until a shared deadline.
+public class BackgroundExecutor {
+    private static final long SATURATION_LOG_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    public enum Overflow { REJECT, CALLER_RUNS }
+
+    private final Plugin plugin;
+    private final Map<String, Lane> lanes = new LinkedHashMap<>(); // guarded by itself
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SimpleAuth-Timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public BackgroundExecutor(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    // Lanes are shut down in the order they are created
+    public Lane lane(String name, int threads, int capacity, Overflow overflow) {
+        synchronized (lanes) {
+            if (lanes.containsKey(name)) throw new IllegalArgumentException("Duplicate lane " + name);
+            Lane lane = new Lane(name, Math.max(1, threads), capacity, overflow);
+            lanes.put(name, lane);
+            return lane;
+        }
+    }
+
+    public Lane get(String name) {
+        synchronized (lanes) {
+            Lane lane = lanes.get(name);
+            if (lane == null) throw new IllegalArgumentException("Unknown lane " + name);
+            return lane;
+        }
+    }
+
+    public Collection<Lane> getLanes() {
+        synchronized (lanes) {
+            return List.copyOf(lanes.values());
+        }
+    }
+
+    // Stops the timer, then closes every lane in the order they were created. Each lane runs what it
+    // already has queued; whatever is left at the deadline is interrupted.
+    public void shutdown(long timeoutMillis) {
+        timer.shutdownNow();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (Lane lane : getLanes()) lane.close(deadline);
+    }
+
+    public class Lane implements Executor {
+        private final String name;
+        private final int capacity;
+        private final Overflow overflow;
+        private final BlockingQueue<Runnable> queue;
+        private final List<Thread> workers = new ArrayList<>();
+        private volatile boolean closed;
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder callerRuns = new LongAdder();
+        private final AtomicLong lastSaturationLog = new AtomicLong(System.nanoTime() - SATURATION_LOG_NANOS);
+
+        private Lane(String name, int threads, int capacity, Overflow overflow) {
+            this.name = name;
+            this.capacity = capacity;
+            this.overflow = overflow;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            for (int i = 0; i < threads; i++) {
+                workers.add(Thread.ofVirtual().name("SimpleAuth-" + name + "-" + (i + 1)).start(this::work));
+            }
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (closed) {
+                rejected.increment();
+                throw new RejectedExecutionException(name + " is shut down");
+            }
+            if (queue.offer(task)) return;
+
+            saturated();
+            if (overflow == Overflow.CALLER_RUNS) {
+                callerRuns.increment();
+                run(task);
+                return;
+            }
+            rejected.increment();
+            throw new RejectedExecutionException(name + " queue is full");
+        }
+
+        public <T> CompletableFuture<T> submit(Callable<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+            return result;
+        }
+
+        // Runs task on this lane after delay. Dropped (and counted as rejected) if the lane is full by then.
+        public void schedule(Runnable task, long delay, TimeUnit unit) {
+            try {
+                timer.schedule(() -> {
+                    try {
+                        execute(task);
+                    } catch (RejectedExecutionException ignored) {
+                        // counted by execute
+                    }
+                }, delay, unit);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down
+            }
+        }
+
+        // Periodic task that never overlaps itself: the next run is timed from the end of the previous one
+        public void scheduleWithFixedDelay(Runnable task, long initialDelay, long delay, TimeUnit unit) {
+            schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        schedule(this, delay, unit);
+                    }
+                }
+            }, initialDelay, unit);
+        }
+
+        private void work() {
+            try {
+                while (!closed || !queue.isEmpty()) {
+                    Runnable task = queue.poll(1, TimeUnit.SECONDS);
+                    if (task != null) run(task);
+                }
+            } catch (InterruptedException ignored) {
+                // deadline passed during shutdown
+            }
+        }
+
+        private void run(Runnable task) {
+            active.incrementAndGet();
+            try {
+                task.run();
+                completed.increment();
+            } catch (Throwable t) {
+                failed.increment();
+                plugin.getLogger().warning("Task on " + name + " failed: " + t);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        private void saturated() {
+            long now = System.nanoTime();
+            long last = lastSaturationLog.get();
+            if (now - last >= SATURATION_LOG_NANOS && lastSaturationLog.compareAndSet(last, now)) {
+                plugin.getLogger().warning("Background lane " + name + " is saturated (" + capacity + " queued, "
+                        + (overflow == Overflow.CALLER_RUNS ? "running on the caller" : "rejecting") + ")");
+            }
+        }
+
+        private void close(long deadline) {
+            closed = true;
+            for (Thread worker : workers) {
+                long left = deadline - System.nanoTime();
+                try {
+                    if (left <= 0 || !worker.join(Duration.ofNanos(left))) worker.interrupt();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    worker.interrupt();
+                }
+            }
+            if (!queue.isEmpty()) {
+                plugin.getLogger().warning("Background lane " + name + " shut down with " + queue.size() + " tasks not run");
+                queue.clear();
+            }
+        }
+
+        public String getName() { return name; }
+        public int getCapacity() { return capacity; }
+        public int getQueueDepth() { return queue.size(); }
+        public int getActive() { return active.get(); }
+        public long getCompleted() { return completed.sum(); }
+        public long getFailed() { return failed.sum(); }
+        public long getRejected() { return rejected.sum(); }
+        public long getCallerRuns() { return callerRuns.sum(); }
+    }
+}
@@ -0,0 +1,168 @@
+package com.simpleauth;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Loads the chunks around a login destination with Paper's async chunk loading, so the teleport
+// that follows never makes the main thread load or generate terrain. Loaded destinations stay warm
+// (held by a plugin chunk ticket) for a while, so a relog or a second login nearby finds them ready.
+// Main thread only; the returned futures also complete on the main thread.
+public class ChunkPrefetcher {
+    private final Plugin plugin;
+    private final boolean enabled;
+    private final int radius;
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    private record Key(UUID world, int x, int z) {}
+
+    private static final class Destination {
+        final World world;
+        final List<Long> chunks = new ArrayList<>(); // ticketed so far, packed x/z
+        final CompletableFuture<Void> ready;
+        long expiresAt;
+        boolean evicted;
+
+        Destination(World world, CompletableFuture<Void> ready) {
+            this.world = world;
+            this.ready = ready;
+        }
+    }
+
+    // access order, so the least recently used destination is evicted first
+    private final LinkedHashMap<Key, Destination> destinations = new LinkedHashMap<>(16, 0.75f, true);
+    // destinations overlap, a chunk's ticket goes once nothing references it
+    private final Map<Key, Integer> tickets = new HashMap<>();
+    private volatile int destinationCount; // sizes of the two maps above, for /metrics
+    private volatile int heldChunks;
+
+    private final LongAdder warm = new LongAdder();
+    private final LongAdder loading = new LongAdder();
+    private final LongAdder cold = new LongAdder();
+
+    public ChunkPrefetcher(Plugin plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.enabled = config == null || config.getBoolean("enabled", true);
+        this.radius = Math.max(0, config == null ? 2 : config.getInt("radius", 2));
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config == null ? 60 : config.getLong("ttlSeconds", 60));
+        this.maxEntries = Math.max(1, config == null ? 32 : config.getInt("maxEntries", 32));
+    }
+
+    // Completes once every chunk within the radius of loc is loaded. Never completes exceptionally.
+    public CompletableFuture<Void> prefetch(Location loc) {
+        if (!enabled || loc == null || loc.getWorld() == null) return CompletableFuture.completedFuture(null);
+        World world = loc.getWorld();
+        int cx = loc.getBlockX() >> 4;
+        int cz = loc.getBlockZ() >> 4;
+        Key key = new Key(world.getUID(), cx, cz);
+        long now = System.nanoTime();
+
+        Destination known = destinations.get(key);
+        if (known != null) {
+            (known.ready.isDone() ? warm : loading).increment();
+            known.expiresAt = now + ttlNanos;
+            return known.ready;
+        }
+        cold.increment();
+
+        List<CompletableFuture<Chunk>> loads = new ArrayList<>();
+        for (int x = cx - radius; x <= cx + radius; x++) {
+            for (int z = cz - radius; z <= cz + radius; z++) {
+                boolean urgent = x == cx && z == cz; // the chunk the player lands in goes first
+                loads.add(world.getChunkAtAsync(x, z, true, urgent));
+            }
+        }
+        CompletableFuture<Void> all = CompletableFuture.allOf(loads.toArray(new CompletableFuture<?>[0]));
+        Destination dest = new Destination(world, all.handle((v, err) -> null));
+        dest.expiresAt = now + ttlNanos;
+        destinations.put(key, dest);
+
+        // Tickets are taken as the chunks arrive, loading is left to the async path
+        for (CompletableFuture<Chunk> load : loads) {
+            load.thenAccept(chunk -> {
+                if (!dest.evicted) hold(dest, chunk.getX(), chunk.getZ());
+            });
+        }
+        long start = now;
+        dest.ready.thenRun(() -> Metrics.CHUNK_PREFETCH.recordSince(start));
+
+        Iterator<Destination> it = destinations.values().iterator();
+        while (destinations.size() > maxEntries && it.hasNext()) {
+            Destination oldest = it.next();
+            it.remove();
+            release(oldest);
+        }
+        updateGauges();
+        return dest.ready;
+    }
+
+    // Drops destinations nobody asked for within the TTL
+    public void sweep() {
+        long now = System.nanoTime();
+        Iterator<Destination> it = destinations.values().iterator();
+        while (it.hasNext()) {
+            Destination dest = it.next();
+            if (dest.expiresAt - now > 0) continue;
+            it.remove();
+            release(dest);
+        }
+        updateGauges();
+    }
+
+    public void close() {
+        for (Destination dest : destinations.values()) dest.evicted = true;
+        destinations.clear();
+        tickets.clear();
+        updateGauges();
+        for (World world : Bukkit.getWorlds()) world.removePluginChunkTickets(plugin);
+    }
+
+    private void hold(Destination dest, int x, int z) {
+        dest.chunks.add(((long) x << 32) | (z & 0xFFFFFFFFL));
+        if (tickets.merge(new Key(dest.world.getUID(), x, z), 1, Integer::sum) == 1) {
+            dest.world.addPluginChunkTicket(x, z, plugin);
+            heldChunks = tickets.size();
+        }
+    }
+
+    private void release(Destination dest) {
+        dest.evicted = true;
+        for (long packed : dest.chunks) {
+            int x = (int) (packed >> 32);
+            int z = (int) packed;
+            Key key = new Key(dest.world.getUID(), x, z);
+            if (tickets.merge(key, -1, Integer::sum) <= 0) {
+                tickets.remove(key);
+                dest.world.removePluginChunkTicket(x, z, plugin);
+            }
+        }
+        dest.chunks.clear();
+    }
+
+    private void updateGauges() {
+        destinationCount = destinations.size();
+        heldChunks = tickets.size();
+    }
+
+    public int size() { return destinationCount; }
+    public int getHeldChunks() { return heldChunks; }
+
+    public long getWarm() { return warm.sum(); }
+    public long getLoading() { return loading.sum(); }
+    public long getCold() { return cold.sum(); }
+}
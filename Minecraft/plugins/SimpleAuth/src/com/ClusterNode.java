@@ -0,0 +1,625 @@
+package com.simpleauth;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.plugin.Plugin;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// Optional coordination between several servers sharing one player base. Every node keeps its own
+// copy of the accounts; this only makes sure one account is used on one node at a time:
+//   - before a login binds, the node asks every peer for a lease on the account. A peer refuses if
+//     the account has a session there, is leased by a third node, or it is asking for it too and
+//     has the lower node id. Unreachable peers count as granted, so one node going down doesn't
+//     stop logins everywhere else.
+//   - the holder renews its leases every lease/3; a crashed holder's leases run out after leaseSeconds
+//   - every account write is pushed to the peers, which apply it to their copy (and drop anything
+//     cached for that account) so the next node to get the lease starts from the latest record
+// Plain TCP between nodes, one outbound connection per peer with its own writer thread and bounded
+// queue; requests and replies are matched by id.
+// Updates carry passwords and the superuser flag, so nodes authenticate each other with a shared
+// secret: the handshake proves both sides know it (fresh nonces from each, so it can't be replayed),
+// and every frame after it is sealed with an HMAC keyed per connection and direction.
+public class ClusterNode {
+    private static final int MAGIC = 0x53414332; // "SAC2"
+    private static final byte HELLO = 1, ACQUIRE = 2, REPLY = 3, RENEW = 4, RELEASE = 5, UPDATE = 6;
+    private static final int OUTBOX = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 5000;
+    private static final long RECONNECT_MILLIS = 2000;
+    private static final int NONCE_LENGTH = 16;
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+    private static final String HMAC = "HmacSHA256";
+
+    private final Plugin plugin;
+    private volatile boolean enabled;
+    private final String nodeId;
+    private final String bind;
+    private final int port;
+    private final long leaseNanos;
+    private final long requestTimeoutMillis;
+    private final byte[] secret;
+    private final SecureRandom random = new SecureRandom();
+    private final List<Peer> peers = new ArrayList<>();
+
+    private final Predicate<String> hasLocalSession;
+    private final Consumer<String> onRemoteAcquire;
+    private final BiConsumer<String, Map<String, Object>> onRemoteUpdate;
+
+    private final Set<String> held = ConcurrentHashMap.newKeySet(); // leases this node holds
+    private final Set<String> acquiring = new HashSet<>();           // guarded by this
+    private final Map<String, Lease> remote = new HashMap<>();       // guarded by this
+
+    private final AtomicLong nextRequestId = new AtomicLong();
+    private final BackgroundExecutor.Lane timer;
+    private ServerSocket server;
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+    private final LongAdder unreachable = new LongAdder();
+    private final LongAdder updatesSent = new LongAdder();
+    private final LongAdder updatesReceived = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private record Lease(String node, long expiresAt) {}
+
+    private interface Frame {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    public ClusterNode(Plugin plugin, ConfigurationSection config, BackgroundExecutor.Lane timer, Predicate<String> hasLocalSession,
+                       Consumer<String> onRemoteAcquire, BiConsumer<String, Map<String, Object>> onRemoteUpdate) {
+        this.plugin = plugin;
+        this.enabled = config != null && config.getBoolean("enabled", false);
+        this.bind = config == null ? "127.0.0.1" : config.getString("bind", "127.0.0.1");
+        this.port = config == null ? 27200 : config.getInt("port", 27200);
+        this.nodeId = config == null ? bind + ":" + port : config.getString("nodeId", bind + ":" + port);
+        this.leaseNanos = TimeUnit.SECONDS.toNanos(config == null ? 30 : config.getLong("leaseSeconds", 30));
+        this.requestTimeoutMillis = config == null ? 2000 : config.getLong("requestTimeoutMillis", 2000);
+        this.secret = (config == null ? "" : config.getString("secret", "")).getBytes(StandardCharsets.UTF_8);
+        this.hasLocalSession = hasLocalSession;
+        this.onRemoteAcquire = onRemoteAcquire;
+        this.onRemoteUpdate = onRemoteUpdate;
+        if (config != null) {
+            for (String address : config.getStringList("peers")) {
+                int colon = address.lastIndexOf(':');
+                if (colon < 0) {
+                    plugin.getLogger().warning("Ignoring cluster peer without a port: " + address);
+                    continue;
+                }
+                peers.add(new Peer(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            }
+        }
+        this.timer = timer;
+    }
+
+    public void start() {
+        if (!enabled) return;
+        if (secret.length < 16) {
+            plugin.getLogger().severe("Cluster mode disabled, cluster.secret must be set to at least 16 characters on every node");
+            enabled = false;
+            return;
+        }
+        try {
+            server = new ServerSocket();
+            server.bind(new InetSocketAddress(bind, port));
+        } catch (IOException e) {
+            plugin.getLogger().severe("Cluster mode disabled, can't listen on " + bind + ":" + port + ": " + e.getMessage());
+            enabled = false;
+            return;
+        }
+        Thread.ofPlatform().daemon().name("SimpleAuth-Cluster-Accept").start(this::acceptLoop);
+        for (Peer peer : peers) peer.writer = Thread.ofVirtual().name("SimpleAuth-Cluster-" + peer.address()).start(peer::writeLoop);
+        long period = TimeUnit.NANOSECONDS.toMillis(leaseNanos) / 3;
+        timer.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+        plugin.getLogger().info("Cluster node " + nodeId + " listening on " + bind + ":" + port + " with " + peers.size() + " peer(s)");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Cheap local check: a peer told us it holds this account
+    public synchronized boolean isHeldRemotely(String account) {
+        if (!enabled) return false;
+        Lease lease = remote.get(account);
+        return lease != null && lease.expiresAt() - System.nanoTime() > 0;
+    }
+
+    // Completes with false if another node holds or wins the account. Completes right away when
+    // the answer is known locally, otherwise on a cluster thread.
+    public CompletableFuture<Boolean> acquire(String account) {
+        if (!enabled || held.contains(account)) return CompletableFuture.completedFuture(true);
+        synchronized (this) {
+            if (isHeldRemotely(account)) {
+                denied.increment();
+                return CompletableFuture.completedFuture(false);
+            }
+            acquiring.add(account);
+        }
+
+        List<CompletableFuture<Boolean>> replies = new ArrayList<>(peers.size());
+        for (Peer peer : peers) {
+            replies.add(peer.request(account).completeOnTimeout(null, requestTimeoutMillis, TimeUnit.MILLISECONDS)
+                    .exceptionally(e -> null));
+        }
+        return CompletableFuture.allOf(replies.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            boolean ok = true;
+            for (CompletableFuture<Boolean> reply : replies) {
+                Boolean answer = reply.join();
+                if (answer == null) unreachable.increment();
+                else if (!answer) ok = false;
+            }
+            synchronized (this) {
+                acquiring.remove(account);
+                if (ok) held.add(account);
+            }
+            (ok ? granted : denied).increment();
+            if (!ok) broadcast(releaseFrame(account)); // hand back what the other peers granted
+            return ok;
+        });
+    }
+
+    public void release(String account) {
+        if (!enabled || !held.remove(account)) return;
+        broadcast(releaseFrame(account));
+    }
+
+    // Main thread, after every account write
+    public void publish(String account, Map<String, Object> fields) {
+        if (!enabled || peers.isEmpty()) return;
+        Map<String, Object> copy = new LinkedHashMap<>(fields);
+        broadcast(out -> {
+            out.writeByte(UPDATE);
+            out.writeUTF(account);
+            writeFields(out, copy);
+        });
+        updatesSent.increment();
+    }
+
+    private synchronized boolean grant(String account, String node) {
+        if (hasLocalSession.test(account) || held.contains(account)) return false;
+        if (acquiring.contains(account) && nodeId.compareTo(node) < 0) return false;
+        long now = System.nanoTime();
+        Lease lease = remote.get(account);
+        if (lease != null && !lease.node().equals(node) && lease.expiresAt() - now > 0) return false;
+        remote.put(account, new Lease(node, now + leaseNanos));
+        return true;
+    }
+
+    private void renew() {
+        if (closed) return;
+        synchronized (this) {
+            long now = System.nanoTime();
+            remote.values().removeIf(l -> l.expiresAt() - now <= 0);
+        }
+        if (held.isEmpty()) return;
+        List<String> accounts = new ArrayList<>(held);
+        broadcast(out -> {
+            out.writeByte(RENEW);
+            out.writeInt(accounts.size());
+            for (String account : accounts) out.writeUTF(account);
+        });
+    }
+
+    private static Frame releaseFrame(String account) {
+        return out -> {
+            out.writeByte(RELEASE);
+            out.writeUTF(account);
+        };
+    }
+
+    private void broadcast(Frame frame) {
+        for (Peer peer : peers) peer.send(frame);
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                Thread.ofVirtual().name("SimpleAuth-Cluster-In").start(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) plugin.getLogger().warning("Cluster accept failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // Inbound connection from a peer: requests in, replies back on the same socket
+    private void serve(Socket socket) {
+        inbound.add(socket);
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            DataInputStream raw = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream rawOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (raw.readByte() != HELLO || raw.readInt() != MAGIC) return;
+            String node = raw.readUTF();
+            byte[] clientNonce = readNonce(raw);
+            byte[] serverNonce = nonce();
+            rawOut.write(serverNonce);
+            rawOut.write(hmac(secret, "server", clientNonce, serverNonce));
+            rawOut.flush();
+            byte[] proof = new byte[32];
+            raw.readFully(proof);
+            if (!MessageDigest.isEqual(proof, hmac(secret, "client", node.getBytes(StandardCharsets.UTF_8), clientNonce, serverNonce))) {
+                plugin.getLogger().warning("Rejected cluster connection from " + socket.getRemoteSocketAddress() + ": bad secret");
+                return;
+            }
+            socket.setSoTimeout(0);
+            SealedIn in = new SealedIn(raw, hmac(secret, "c2s", clientNonce, serverNonce));
+            SealedOut out = new SealedOut(rawOut, hmac(secret, "s2c", clientNonce, serverNonce));
+            while (!closed) {
+                DataInputStream frame = in.next();
+                byte type = frame.readByte();
+                switch (type) {
+                    case ACQUIRE -> {
+                        long id = frame.readLong();
+                        String account = frame.readUTF();
+                        boolean ok = grant(account, node);
+                        if (ok) onRemoteAcquire.accept(account);
+                        out.write(reply -> {
+                            reply.writeByte(REPLY);
+                            reply.writeLong(id);
+                            reply.writeBoolean(ok);
+                        });
+                        out.flush();
+                    }
+                    case RENEW -> {
+                        int n = frame.readInt();
+                        long expiresAt = System.nanoTime() + leaseNanos;
+                        for (int i = 0; i < n; i++) {
+                            String account = frame.readUTF();
+                            synchronized (this) {
+                                Lease lease = remote.get(account);
+                                if (lease != null && lease.node().equals(node)) remote.put(account, new Lease(node, expiresAt));
+                            }
+                        }
+                    }
+                    case RELEASE -> {
+                        String account = frame.readUTF();
+                        synchronized (this) {
+                            Lease lease = remote.get(account);
+                            if (lease != null && lease.node().equals(node)) remote.remove(account);
+                        }
+                    }
+                    case UPDATE -> {
+                        String account = frame.readUTF();
+                        Map<String, Object> fields = readFields(frame);
+                        updatesReceived.increment();
+                        onRemoteUpdate.accept(account, fields);
+                    }
+                    default -> throw new IOException("Unknown cluster frame " + type);
+                }
+            }
+        } catch (IOException e) {
+            // peer went away, it reconnects on its own
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    private class Peer {
+        final String host;
+        final int port;
+        final BlockingQueue<Frame> outbox = new ArrayBlockingQueue<>(OUTBOX);
+        final Map<Long, CompletableFuture<Boolean>> pending = new ConcurrentHashMap<>();
+        volatile Thread writer;
+        volatile Socket socket;
+
+        Peer(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        String address() {
+            return host + ":" + port;
+        }
+
+        void send(Frame frame) {
+            if (!outbox.offer(frame)) dropped.increment();
+        }
+
+        CompletableFuture<Boolean> request(String account) {
+            long id = nextRequestId.incrementAndGet();
+            CompletableFuture<Boolean> reply = new CompletableFuture<>();
+            pending.put(id, reply);
+            reply.whenComplete((r, e) -> pending.remove(id));
+            if (!outbox.offer(out -> {
+                out.writeByte(ACQUIRE);
+                out.writeLong(id);
+                out.writeUTF(account);
+            })) {
+                dropped.increment();
+                reply.complete(null);
+            }
+            return reply;
+        }
+
+        void writeLoop() {
+            SealedOut out = null;
+            while (!closed || !outbox.isEmpty()) {
+                Frame frame;
+                try {
+                    frame = outbox.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (frame == null) continue;
+                try {
+                    if (out == null) out = connect();
+                    out.write(frame);
+                    if (outbox.isEmpty()) out.flush();
+                } catch (IOException e) {
+                    out = null;
+                    disconnect();
+                    if (closed) break;
+                    try {
+                        Thread.sleep(RECONNECT_MILLIS);
+                    } catch (InterruptedException ie) {
+                        break;
+                    }
+                }
+            }
+            disconnect();
+        }
+
+        private SealedOut connect() throws IOException {
+            Socket s = new Socket();
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            s.setTcpNoDelay(true);
+            socket = s;
+            s.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            byte[] clientNonce = nonce();
+            out.writeByte(HELLO);
+            out.writeInt(MAGIC);
+            out.writeUTF(nodeId);
+            out.write(clientNonce);
+            out.flush();
+            byte[] serverNonce = readNonce(in);
+            byte[] proof = new byte[32];
+            in.readFully(proof);
+            if (!MessageDigest.isEqual(proof, hmac(secret, "server", clientNonce, serverNonce))) {
+                plugin.getLogger().warning("Cluster peer " + address() + " failed authentication, check cluster.secret");
+                throw new IOException("Peer failed authentication");
+            }
+            out.write(hmac(secret, "client", nodeId.getBytes(StandardCharsets.UTF_8), clientNonce, serverNonce));
+            out.flush();
+            s.setSoTimeout(0);
+            SealedIn replies = new SealedIn(in, hmac(secret, "s2c", clientNonce, serverNonce));
+            Thread.ofVirtual().name("SimpleAuth-Cluster-Reply").start(() -> readReplies(s, replies));
+            return new SealedOut(out, hmac(secret, "c2s", clientNonce, serverNonce));
+        }
+
+        private void readReplies(Socket s, SealedIn in) {
+            try {
+                while (true) {
+                    DataInputStream frame = in.next();
+                    if (frame.readByte() != REPLY) throw new IOException("Unexpected cluster frame");
+                    CompletableFuture<Boolean> reply = pending.get(frame.readLong());
+                    boolean ok = frame.readBoolean();
+                    if (reply != null) reply.complete(ok);
+                }
+            } catch (IOException e) {
+                if (socket == s) disconnect();
+            }
+        }
+
+        private void disconnect() {
+            Socket s = socket;
+            socket = null;
+            if (s != null) {
+                try {
+                    s.close();
+                } catch (IOException ignored) {}
+            }
+            // requests sent on the dead connection will never be answered
+            for (CompletableFuture<Boolean> reply : pending.values()) reply.complete(null);
+        }
+    }
+
+    // One direction of an authenticated connection: [length][frame][HMAC-SHA256(key, counter || frame)].
+    // The counter is implicit, so a replayed, reordered or dropped frame fails the check.
+    // Each instance is used by a single thread.
+    private static final class SealedOut {
+        private final DataOutputStream out;
+        private final Mac mac;
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+        private long counter;
+
+        SealedOut(DataOutputStream out, byte[] key) throws IOException {
+            this.out = out;
+            this.mac = mac(key);
+        }
+
+        void write(Frame frame) throws IOException {
+            buf.reset();
+            frame.write(new DataOutputStream(buf));
+            byte[] body = buf.toByteArray();
+            mac.update(longBytes(counter++));
+            mac.update(body);
+            out.writeInt(body.length);
+            out.write(body);
+            out.write(mac.doFinal());
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+    }
+
+    private static final class SealedIn {
+        private final DataInputStream in;
+        private final Mac mac;
+        private final byte[] tag = new byte[32];
+        private long counter;
+
+        SealedIn(DataInputStream in, byte[] key) throws IOException {
+            this.in = in;
+            this.mac = mac(key);
+        }
+
+        DataInputStream next() throws IOException {
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_FRAME) throw new IOException("Bad cluster frame length " + length);
+            byte[] body = new byte[length];
+            in.readFully(body);
+            in.readFully(tag);
+            mac.update(longBytes(counter++));
+            mac.update(body);
+            if (!MessageDigest.isEqual(tag, mac.doFinal())) throw new IOException("Cluster frame failed authentication");
+            return new DataInputStream(new ByteArrayInputStream(body));
+        }
+    }
+
+    private byte[] nonce() {
+        byte[] n = new byte[NONCE_LENGTH];
+        random.nextBytes(n);
+        return n;
+    }
+
+    private static byte[] readNonce(DataInputStream in) throws IOException {
+        byte[] n = new byte[NONCE_LENGTH];
+        in.readFully(n);
+        return n;
+    }
+
+    // Label and parts are length-prefixed so different splits can't produce the same input
+    private static byte[] hmac(byte[] key, String label, byte[]... parts) throws IOException {
+        Mac mac = mac(key);
+        byte[] l = label.getBytes(StandardCharsets.UTF_8);
+        mac.update(intBytes(l.length));
+        mac.update(l);
+        for (byte[] part : parts) {
+            mac.update(intBytes(part.length));
+            mac.update(part);
+        }
+        return mac.doFinal();
+    }
+
+    private static Mac mac(byte[] key) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            mac.init(new SecretKeySpec(key, HMAC));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("HMAC unavailable", e);
+        }
+    }
+
+    private static byte[] intBytes(int v) {
+        return new byte[] {(byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v};
+    }
+
+    private static byte[] longBytes(long v) {
+        byte[] b = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            b[i] = (byte) v;
+            v >>>= 8;
+        }
+        return b;
+    }
+
+    // Account field values are strings, booleans, ints, longs, byte arrays or null (= remove)
+    private static void writeFields(DataOutputStream out, Map<String, Object> fields) throws IOException {
+        out.writeInt(fields.size());
+        for (Map.Entry<String, Object> e : fields.entrySet()) {
+            out.writeUTF(e.getKey());
+            Object value = e.getValue();
+            if (value == null) {
+                out.writeByte(0);
+            } else if (value instanceof byte[] bytes) {
+                out.writeByte(1);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (value instanceof Boolean b) {
+                out.writeByte(2);
+                out.writeBoolean(b);
+            } else if (value instanceof Long l) {
+                out.writeByte(3);
+                out.writeLong(l);
+            } else if (value instanceof Integer i) {
+                out.writeByte(5);
+                out.writeInt(i);
+            } else {
+                String s = value.toString();
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                out.writeByte(4);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+        }
+    }
+
+    private static Map<String, Object> readFields(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        Map<String, Object> fields = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            String key = in.readUTF();
+            byte tag = in.readByte();
+            fields.put(key, switch (tag) {
+                case 0 -> null;
+                case 1, 4 -> {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    yield tag == 1 ? bytes : new String(bytes, StandardCharsets.UTF_8);
+                }
+                case 2 -> in.readBoolean();
+                case 3 -> in.readLong();
+                case 5 -> in.readInt();
+                default -> throw new IOException("Unknown field type " + tag);
+            });
+        }
+        return fields;
+    }
+
+    // Hands back our leases and gives the writers a moment to get the releases out
+    public void close(long timeoutMillis) {
+        if (!enabled) return;
+        for (String account : new ArrayList<>(held)) release(account);
+        enabled = false;
+        closed = true;
+        try {
+            if (server != null) server.close();
+            for (Socket socket : inbound) socket.close();
+        } catch (IOException ignored) {}
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Peer peer : peers) {
+            Thread writer = peer.writer;
+            if (writer == null) continue;
+            try {
+                writer.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer.interrupt();
+        }
+    }
+
+    public int getHeldCount() { return held.size(); }
+    public synchronized int getRemoteCount() { return remote.size(); }
+    public long getGranted() { return granted.sum(); }
+    public long getDenied() { return denied.sum(); }
+    public long getUnreachable() { return unreachable.sum(); }
+    public long getUpdatesSent() { return updatesSent.sum(); }
+    public long getUpdatesReceived() { return updatesReceived.sum(); }
+    public long getDropped() { return dropped.sum(); }
+}
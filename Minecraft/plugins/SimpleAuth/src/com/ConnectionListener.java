@@ -1,17 +1,39 @@
 package com.simpleauth;
 
+import net.kyori.adventure.text.Component;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.*;
-import org.bukkit.plugin.Plugin;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent.Result;
 
 public class ConnectionListener implements Listener {
+    private final SimpleAuth plugin;
     private final ExternalNotifier notifier;
 
-    public ConnectionListener(ExternalNotifier notifier) {
+    public ConnectionListener(SimpleAuth plugin, ExternalNotifier notifier) {
+        this.plugin = plugin;
         this.notifier = notifier;
     }
 
+    // Runs on the connection thread, before the server creates anything for the player. LOWEST so a
+    // refused connection isn't worked on by other plugins either.
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPreLogin(AsyncPlayerPreLoginEvent e) {
+        Metrics.handlerCalled(Metrics.Handler.PRE_LOGIN);
+        if (e.getLoginResult() != Result.ALLOWED) return;
+        // not started yet, or the accounts failed to load: nobody could log in anyway
+        if (!plugin.getStages().isReady()) {
+            e.disallow(Result.KICK_OTHER, Component.text("The server is not ready, please try again later."));
+            return;
+        }
+        switch (plugin.getAdmission().check(e.getAddress().getHostAddress(), e.getName())) {
+            case DENY_BLOCKED -> e.disallow(Result.KICK_BANNED, Component.text("You are not allowed on this server."));
+            case DENY_UNKNOWN -> e.disallow(Result.KICK_WHITELIST, Component.text("Not authorized, please request access first."));
+            case ADMIT -> {}
+        }
+    }
+
     @EventHandler
     public void onLogin(PlayerLoginEvent e) {
         // player is attempting to login; address is available
@@ -19,18 +41,28 @@ public class ConnectionListener implements Listener {
         notifier.notifyAsync("connect_attempt", ip, e.getPlayer().getName());
     }
 
-    @EventHandler
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onJoin(PlayerJoinEvent e) {
         // after join: fully connected
+        plugin.getPresence().onConnect(e.getPlayer());
         var addr = e.getPlayer().getAddress();
         String ip = addr == null ? "" : addr.getAddress().getHostAddress();
         notifier.notifyAsync("connected", ip, e.getPlayer().getName());
     }
 
-    @EventHandler
+    // MONITOR so LoginListener has already saved the player before the session is dropped
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onQuit(PlayerQuitEvent e) {
+        plugin.getPresence().onDisconnect(e.getPlayer().getUniqueId());
         var addr = e.getPlayer().getAddress();
         String ip = addr == null ? "" : addr.getAddress().getHostAddress();
         notifier.notifyAsync("disconnected", ip, e.getPlayer().getName());
     }
-}
\ No newline at end of file
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onKick(PlayerKickEvent e) {
+        // kick fires before quit, so save while the session still exists
+        plugin.getUserManager().savePlayerData(e.getPlayer());
+        plugin.getPresence().onDisconnect(e.getPlayer().getUniqueId());
+    }
+}
@@ -3,97 +3,307 @@ package com.simpleauth;
 import java.net.URI;
 import java.net.http.*;
 import java.time.Duration;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 
+// Single consumer for everything sent to the supervisor. Events are queued per key (one per player),
+// so a newer event replaces one that hasn't been sent yet. Each drain sends the queued events with
+// sendAsync; raw events share one POST. Failures are retried on a schedule with exponential
+// backoff and jitter, never by sleeping. Every event is also written to a NotifierOutbox until it is
+// acknowledged, so nothing queued is lost across a restart.
 public class ExternalNotifier {
+    private static final String EVENTS_PATH = "/";
+    private static final long LINGER_MILLIS = 50;   // lets a burst of events share one drain
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
     private final Plugin plugin;
     private final HttpClient client;
-    private final String supervisorUrl;
+    private final String baseUrl;
     private final int maxRetries;
+    private final int capacity;
+    private final NotifierOutbox outbox;
+    private final BackgroundExecutor.Lane consumer; // single-threaded: inFlight is only touched here
+
+    private final LinkedHashMap<String, Event> pending = new LinkedHashMap<>(); // guarded by itself
+    private final Set<String> inFlight = new HashSet<>(); // consumer thread only; sent or waiting for a retry
+    private int sending; // consumer thread only; requests on the wire
+    private CompletableFuture<Void> idle; // consumer thread only; set by close() to wait for sending == 0
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder notDurable = new LongAdder();
+
+    // seq is the outbox record, -1 if it didn't fit
+    private record Event(String key, String path, JsonObject body, int attempt, long seq) {}
 
-    public ExternalNotifier(Plugin plugin, String supervisorUrl, int maxRetries, int timeoutSeconds) {
+    public ExternalNotifier(Plugin plugin, BackgroundExecutor.Lane consumer, String supervisorUrl, int maxRetries,
+                            int timeoutSeconds, int capacity, NotifierOutbox outbox) {
         this.plugin = plugin;
-        this.supervisorUrl = supervisorUrl;
+        this.consumer = consumer;
+        this.outbox = outbox;
+        this.baseUrl = supervisorUrl.endsWith("/") ? supervisorUrl.substring(0, supervisorUrl.length() - 1) : supervisorUrl;
         this.maxRetries = maxRetries;
+        this.capacity = capacity;
         this.client = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(timeoutSeconds))
                 .version(HttpClient.Version.HTTP_1_1)
                 .build();
     }
 
+    // Re-queues whatever the previous run didn't get acknowledged
+    public void start() {
+        try {
+            List<NotifierOutbox.Stored> stored = outbox.open();
+            for (NotifierOutbox.Stored s : stored) {
+                JsonObject body = JsonParser.parseString(s.body()).getAsJsonObject();
+                enqueue(new Event(s.key(), s.path(), body, 0, s.seq()));
+            }
+            if (!stored.isEmpty()) plugin.getLogger().info("Replaying " + stored.size() + " undelivered supervisor events");
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to open notifier outbox: " + e.getMessage());
+        }
+    }
+
+    // Raw presence event, posted to the supervisor url
     public void notifyAsync(String event, String ip, String playerName) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> doNotify(event, ip, playerName, 0));
+        JsonObject body = new JsonObject();
+        body.addProperty("event", event);
+        body.addProperty("player", playerName);
+        body.addProperty("ip", ip);
+        body.addProperty("timestamp", System.currentTimeMillis());
+        append(new Event("event:" + playerName, EVENTS_PATH, body, 0, -1));
     }
 
-    private void doNotify(String event, String ip, String playerName, int attempt) {
-        try {
+    // Supervisor API call for one account, e.g. /logged or /deauthorize
+    public void post(String endpoint, String username) {
+        if (username == null || username.isEmpty()) return;
+        JsonObject body = new JsonObject();
+        body.addProperty("username", username);
+        append(new Event("user:" + username, endpoint, body, 0, -1));
+    }
+
+    // Startup finished and logins are accepted; the body carries the stage timings.
+    // Keyed once per server, so a copy left in the outbox by a crashed run is replaced, not repeated.
+    public void notifyReady(JsonObject startup) {
+        JsonObject body = startup.deepCopy();
+        body.addProperty("timestamp", System.currentTimeMillis());
+        append(new Event("ready", "/ready", body, 0, -1));
+    }
+
+    // convenience: reconciliation push of full online list (call from the main thread)
+    public void pushCurrentOnline() {
+        JsonArray arr = new JsonArray();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            JsonObject o = new JsonObject();
+            o.addProperty("name", p.getName());
+            var addr = p.getAddress();
+            o.addProperty("ip", addr == null ? "" : addr.getAddress().getHostAddress());
+            arr.add(o);
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("event", "reconcile");
+        body.add("players", arr);
+        body.addProperty("timestamp", System.currentTimeMillis());
+        append(new Event("reconcile", EVENTS_PATH, body, 0, -1));
+    }
+
+    private void append(Event e) {
+        long seq = -1;
+        synchronized (pending) {
+            if (pending.containsKey(e.key()) || pending.size() < capacity) {
+                seq = outbox.append(e.key(), e.path(), e.body().toString());
+                if (seq < 0) notDurable.increment(); // still sent, just not kept across a restart
+            }
+        }
+        enqueue(new Event(e.key(), e.path(), e.body(), 0, seq));
+    }
+
+    private void enqueue(Event e) {
+        synchronized (pending) {
+            Event replaced = pending.remove(e.key()); // re-insert so ordering follows the latest event
+            if (replaced != null) {
+                outbox.ack(replaced.seq());
+                coalesced.increment();
+            } else if (pending.size() >= capacity) {
+                outbox.ack(e.seq());
+                dropped.increment();
+                return;
+            }
+            pending.put(e.key(), e);
+        }
+        scheduleDrain(LINGER_MILLIS);
+    }
+
+    private void scheduleDrain(long delayMillis) {
+        if (drainScheduled.compareAndSet(false, true)) {
+            consumer.schedule(this::drain, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        List<Event> batch = new ArrayList<>();
+        synchronized (pending) {
+            Iterator<Event> it = pending.values().iterator();
+            while (it.hasNext()) {
+                Event e = it.next();
+                if (inFlight.contains(e.key())) continue; // keep per-player order: wait for the previous send
+                it.remove();
+                batch.add(e);
+            }
+        }
+        if (batch.isEmpty()) return;
+
+        // one fsync covers every event in this batch
+        outbox.force();
+
+        List<Event> raw = new ArrayList<>();
+        for (Event e : batch) {
+            if (e.path().equals(EVENTS_PATH)) raw.add(e);
+            else send(e.path(), e.body(), List.of(e));
+        }
+        if (raw.size() == 1) {
+            send(EVENTS_PATH, raw.get(0).body(), raw);
+        } else if (!raw.isEmpty()) {
+            JsonArray events = new JsonArray();
+            for (Event e : raw) events.add(e.body());
             JsonObject body = new JsonObject();
-            body.addProperty("event", event);
-            body.addProperty("player", playerName);
-            body.addProperty("ip", ip);
-            body.addProperty("timestamp", System.currentTimeMillis());
-
-            HttpRequest req = HttpRequest.newBuilder()
-                    .uri(URI.create(supervisorUrl))
-                    .header("Content-Type", "application/json")
-                    .timeout(Duration.ofSeconds(5))
-                    .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
-                    .build();
-
-            HttpResponse<String> resp = client.send(req, HttpResponse.BodyHandlers.ofString());
-            if (resp.statusCode() >= 200 && resp.statusCode() < 300) return; // success
-
-            if (attempt < maxRetries) {
-                Thread.sleep(1000L * (attempt + 1));
-                doNotify(event, ip, playerName, attempt + 1);
-            } else {
-                plugin.getLogger().warning("Notifier failed after retries: " + resp.statusCode() + " " + resp.body());
+            body.addProperty("event", "batch");
+            body.add("events", events);
+            send(EVENTS_PATH, body, raw);
+        }
+    }
+
+    private void send(String path, JsonObject body, List<Event> events) {
+        for (Event e : events) inFlight.add(e.key());
+        sending++;
+
+        HttpRequest req = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(5))
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                .build();
+
+        long start = System.nanoTime();
+        client.sendAsync(req, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((resp, err) -> {
+                    Metrics.SUPERVISOR_REQUEST.recordSince(start);
+                    try {
+                        consumer.execute(() -> onResult(path, events, resp, err));
+                    } catch (RejectedExecutionException e) {
+                        // shutting down; the events stay in the outbox for the next start
+                        plugin.getLogger().warning("Dropped supervisor response for " + path + ": " + e.getMessage());
+                    }
+                });
+    }
+
+    private void onResult(String path, List<Event> events, HttpResponse<String> resp, Throwable err) {
+        sending--;
+        int status = resp == null ? 0 : resp.statusCode();
+        if (err == null && status >= 200 && status < 300) {
+            sent.add(events.size());
+            for (Event e : events) {
+                inFlight.remove(e.key());
+                outbox.ack(e.seq());
             }
-        } catch (Exception ex) {
-            if (attempt < maxRetries) {
-                try { Thread.sleep(1000L * (attempt + 1)); } catch (InterruptedException ignored) {}
-                doNotify(event, ip, playerName, attempt + 1);
-            } else {
-                plugin.getLogger().warning("Notifier error: " + ex.getMessage());
+        } else if (err == null && status >= 400 && status < 500 && status != 429) {
+            failed.add(events.size()); // the supervisor rejected it, retrying won't help
+            for (Event e : events) {
+                inFlight.remove(e.key());
+                outbox.ack(e.seq());
             }
+            plugin.getLogger().warning("Supervisor " + path + " rejected (" + status + "): " + resp.body());
+        } else {
+            // the keys stay in flight through the backoff, so nothing newer overtakes the retry
+            for (Event e : events) retry(e, err != null ? err.getMessage() : status + " " + resp.body(), err == null);
+        }
+        if (idle != null && sending == 0) idle.complete(null);
+
+        // anything that queued up behind these keys can go now
+        synchronized (pending) {
+            if (!pending.isEmpty()) scheduleDrain(0);
         }
     }
 
-    // convenience: reconciliation push of full online list
-    public void pushCurrentOnline(String endpointSuffix) {
-        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                JsonArray arr = new JsonArray();
-                for (Player p : Bukkit.getOnlinePlayers()) {
-                    JsonObject o = new JsonObject();
-                    o.addProperty("name", p.getName());
-                    var addr = p.getAddress();
-                    o.addProperty("ip", addr == null ? "" : addr.getAddress().getHostAddress());
-                    arr.add(o);
+    // answered: the supervisor was reached but kept failing the request
+    private void retry(Event e, String reason, boolean answered) {
+        if (e.attempt() >= maxRetries) {
+            inFlight.remove(e.key());
+            failed.increment();
+            if (answered) {
+                // the supervisor itself fails on this event: replaying it on every start won't help
+                outbox.ack(e.seq());
+                plugin.getLogger().warning("Notifier gave up on " + e.path() + " after retries (" + reason + "), dead-lettered: " + e.body());
+            } else {
+                // left unacknowledged in the outbox, so the next start delivers it
+                plugin.getLogger().warning("Notifier failed after retries (" + e.path() + "), kept for the next start: " + reason);
+            }
+            return;
+        }
+        retries.increment();
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << e.attempt());
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        Event next = new Event(e.key(), e.path(), e.body(), e.attempt() + 1, e.seq());
+        consumer.schedule(() -> {
+            inFlight.remove(next.key());
+            synchronized (pending) {
+                // a newer event for the same player queued during the backoff makes this one obsolete
+                if (pending.putIfAbsent(next.key(), next) != null) {
+                    outbox.ack(next.seq());
+                    coalesced.increment();
                 }
-
-                JsonObject body = new JsonObject();
-                body.addProperty("event", "reconcile");
-                body.add("players", arr);
-                body.addProperty("timestamp", System.currentTimeMillis());
-
-                String url = supervisorUrl; // or supervisorUrl + "/reconcile"
-                HttpRequest req = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
-                        .timeout(Duration.ofSeconds(5))
-                        .build();
-
-                client.send(req, HttpResponse.BodyHandlers.discarding());
-            } catch (Exception ex) {
-                plugin.getLogger().warning("Reconcile push failed: " + ex.getMessage());
             }
-        });
+            scheduleDrain(0);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Sends whatever is queued and waits up to timeoutMillis for the requests on the wire.
+    // Events waiting for a retry stay in the outbox for the next start.
+    public void close(long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            CompletableFuture<Void> waiter = consumer.submit(() -> {
+                drain();
+                idle = new CompletableFuture<>();
+                if (sending == 0) idle.complete(null);
+                return idle;
+            }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+            waiter.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Notifier did not drain before shutdown: " + e.getMessage());
+        }
+        outbox.force(); // undelivered events are replayed on the next start
     }
-}
\ No newline at end of file
+
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getSent() { return sent.sum(); }
+    public long getCoalesced() { return coalesced.sum(); }
+    public long getDropped() { return dropped.sum(); }
+    public long getRetries() { return retries.sum(); }
+    public long getFailed() { return failed.sum(); }
+    public long getNotDurable() { return notDurable.sum(); }
+    public int getOutboxPending() { return outbox.getPendingCount(); }
+}
@@ -9,8 +9,45 @@ import java.io.*;
 import java.util.Base64;
 
 public class InventoryUtils {
+    private static final short END_OF_SLOTS = -1;
 
+    // Binary slot list: size, then (slot, length, Paper item bytes) for every non-empty slot
+    public static void writeContents(DataOutputStream out, ItemStack[] contents) throws IOException {
+        long start = System.nanoTime();
+        out.writeShort(contents.length);
+        for (int i = 0; i < contents.length; i++) {
+            ItemStack item = contents[i];
+            if (item == null || item.isEmpty()) continue;
+            byte[] bytes = item.serializeAsBytes();
+            out.writeShort(i);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.writeShort(END_OF_SLOTS);
+        Metrics.INVENTORY_ENCODE.recordSince(start);
+    }
+
+    public static ItemStack[] readContents(DataInputStream in) throws IOException {
+        long start = System.nanoTime();
+        int size = in.readShort();
+        if (size < 0) throw new IOException("Bad inventory size " + size);
+        ItemStack[] contents = new ItemStack[size];
+        short slot;
+        while ((slot = in.readShort()) != END_OF_SLOTS) {
+            if (slot < 0 || slot >= size) throw new IOException("Bad slot " + slot + " in an inventory of " + size);
+            int length = in.readInt();
+            if (length < 0) throw new IOException("Bad item length " + length + " in slot " + slot);
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            contents[slot] = ItemStack.deserializeBytes(bytes);
+        }
+        Metrics.INVENTORY_DECODE.recordSince(start);
+        return contents;
+    }
+
+    // Legacy format (Java serialization + Base64), only read for accounts saved before PlayerState
     public static String toBase64(PlayerInventory inventory) {
+        long start = System.nanoTime();
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
              BukkitObjectOutputStream dataOutput = new BukkitObjectOutputStream(outputStream)) {
 
@@ -18,14 +55,18 @@ public class InventoryUtils {
             for (ItemStack item : inventory.getContents()) {
                 dataOutput.writeObject(item);
             }
-            return Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            dataOutput.flush();
+            String encoded = Base64.getEncoder().encodeToString(outputStream.toByteArray());
+            Metrics.INVENTORY_ENCODE.recordSince(start);
+            return encoded;
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
-    public static void fromBase64(PlayerInventory inventory, String base64) {
+    public static ItemStack[] fromBase64(String base64) {
+        long start = System.nanoTime();
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(Base64.getDecoder().decode(base64));
              BukkitObjectInputStream dataInput = new BukkitObjectInputStream(inputStream)) {
 
@@ -33,9 +74,11 @@ public class InventoryUtils {
             for (int i = 0; i < contents.length; i++) {
                 contents[i] = (ItemStack) dataInput.readObject();
             }
-            inventory.setContents(contents);
+            Metrics.INVENTORY_DECODE.recordSince(start);
+            return contents;
         } catch (Exception e) {
             e.printStackTrace();
+            return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,433 @@
+package com.simpleauth;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+// Append-only account log. Every write is one framed record: [length][crc32][payload],
+// payload = version, user, field count, then (name, type, value) per field. Values of every type
+// except null and boolean start with an int length, so a reader can skip types it doesn't know.
+// Records are fsynced in batches and the log is compacted in the background.
+// The writer keeps the offsets of every account's records, so one account can be read back on
+// demand without replaying the log.
+public class JournalUserStorage implements UserStorage {
+    private static final byte RECORD_VERSION = 1;
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_BYTES = 3;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+
+    private final Plugin plugin;
+    private final Path path;
+    private final long syncIntervalMillis;
+    private final long compactIntervalMinutes;
+    private final Deque<PendingRecord> pending = new ConcurrentLinkedDeque<>();
+    private final BackgroundExecutor.Lane writer; // single-threaded, so the state below needs no locking
+    private volatile boolean closed;
+
+    // Writer lane state
+    private FileChannel channel;
+    private FileChannel reader; // opened on the first read, reopened after compaction
+    private long appendAt; // end of the last durable record, where the next one goes
+    private final Map<String, long[]> offsets = new HashMap<>(); // user -> record offsets, oldest first
+    private long recordCount;
+    private long unknownRecords; // written by a newer version, in full or in part; compaction would drop them
+
+    private record PendingRecord(String user, Map<String, Object> fields) {}
+
+    private interface RecordSink {
+        void accept(long offset, String user, Map<String, Object> fields);
+    }
+
+    public JournalUserStorage(Plugin plugin, BackgroundExecutor.Lane writer, File file, long syncIntervalMillis, long compactIntervalMinutes) {
+        this.plugin = plugin;
+        this.writer = writer;
+        this.path = file.toPath();
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.compactIntervalMinutes = compactIntervalMinutes;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    @Override
+    public void load(BiConsumer<String, Map<String, Object>> sink) throws IOException {
+        if (!Files.exists(path)) return;
+
+        long good = replay(path, (offset, user, fields) -> {
+            addOffset(user, offset);
+            recordCount++;
+            sink.accept(user, fields);
+        });
+        if (unknownRecords > 0) {
+            plugin.getLogger().warning("Skipped " + unknownRecords + " records or fields this version can't read in " + path.getFileName()
+                    + ", compaction is off until they are gone");
+        }
+
+        long size = Files.size(path);
+        if (good < size) {
+            // torn or corrupt tail from a crash mid-append: keep everything before it
+            plugin.getLogger().warning("Discarding " + (size - good) + " corrupt bytes at the end of " + path.getFileName());
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ch.truncate(good);
+                ch.force(true);
+            }
+        }
+    }
+
+    // One-shot import of another backend (e.g. the legacy users.yml), written as a compacted log
+    public void importFrom(UserStorage source) throws IOException {
+        Map<String, Map<String, Object>> merged = new LinkedHashMap<>();
+        source.load((user, fields) -> merge(merged, user, fields));
+        writeSnapshot(merged);
+        offsets.clear(); // load() rebuilds these from the new log
+        recordCount = 0;
+    }
+
+    @Override
+    public void start() {
+        writer.execute(() -> {
+            try {
+                openChannel();
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to open " + path.getFileName() + ": " + e.getMessage());
+            }
+        });
+        writer.scheduleWithFixedDelay(this::sync, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        writer.scheduleWithFixedDelay(this::compactIfNeeded, compactIntervalMinutes, compactIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    // Runs on the writer lane after appending what is queued, so the offsets are current.
+    // Anything still pending (the log couldn't be opened) is applied on top.
+    @Override
+    public CompletableFuture<Map<String, Object>> read(String user) {
+        return writer.submit(() -> {
+            sync();
+            Map<String, Map<String, Object>> merged = new HashMap<>(2);
+            long[] at = offsets.get(user);
+            if (at != null) {
+                if (reader == null) reader = FileChannel.open(path, StandardOpenOption.READ);
+                for (int i = 1; i <= (int) at[0]; i++) {
+                    decode(readFrame(reader, at[i]), at[i], (offset, u, fields) -> merge(merged, u, fields));
+                }
+            }
+            for (PendingRecord r : pending) {
+                if (r.user().equals(user)) merge(merged, user, r.fields());
+            }
+            Map<String, Object> fields = merged.get(user);
+            return fields == null ? new HashMap<>() : fields;
+        });
+    }
+
+    @Override
+    public void write(String user, Map<String, Object> fields) {
+        pending.add(new PendingRecord(user, new LinkedHashMap<>(fields)));
+    }
+
+    // Appends everything queued so far and pays for a single fsync. The batch only counts once the
+    // fsync succeeded: on failure the log is cut back to the last durable record and the batch is
+    // queued again in order, so the next scheduled sync retries it and no torn frame is left
+    // in front of later records.
+    private void sync() {
+        if (closed || pending.isEmpty() || channel == null) return;
+        List<PendingRecord> batch = new ArrayList<>();
+        long end = appendAt;
+        long[] at = null;
+        try {
+            if (channel.size() > appendAt) channel.truncate(appendAt); // leftover of a failed sync
+            PendingRecord r;
+            while ((r = pending.poll()) != null) {
+                batch.add(r);
+            }
+            at = new long[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                ByteBuffer frame = encode(batch.get(i).user(), batch.get(i).fields());
+                at[i] = end;
+                end += frame.remaining();
+                writeFully(channel, frame);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to append to " + path.getFileName() + ", retrying: " + e.getMessage());
+            for (int i = batch.size() - 1; i >= 0; i--) pending.addFirst(batch.get(i));
+            try {
+                channel.truncate(appendAt);
+            } catch (IOException ex) {
+                plugin.getLogger().warning("Failed to truncate " + path.getFileName() + ": " + ex.getMessage());
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) addOffset(batch.get(i).user(), at[i]);
+        appendAt = end;
+        recordCount += batch.size();
+    }
+
+    // Rewrites the log with one record per account once superseded records dominate it
+    private void compactIfNeeded() {
+        if (closed || unknownRecords > 0 || recordCount < COMPACT_MIN_RECORDS || recordCount < offsets.size() * 2L) return;
+        sync();
+        try {
+            Map<String, Map<String, Object>> merged = new LinkedHashMap<>();
+            replay(path, (offset, user, fields) -> merge(merged, user, fields));
+
+            channel.close();
+            channel = null;
+            closeReader();
+            writeSnapshot(merged);
+            openChannel();
+            plugin.getLogger().info("Compacted " + path.getFileName() + " to " + recordCount + " records");
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to compact " + path.getFileName() + ": " + e.getMessage());
+            try {
+                if (channel == null) openChannel();
+            } catch (IOException ex) {
+                plugin.getLogger().severe("Failed to reopen " + path.getFileName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close(long timeoutMillis) {
+        try {
+            writer.submit(() -> {
+                sync();
+                closed = true;
+                if (channel != null) channel.close();
+                closeReader();
+                return null;
+            }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Timed out waiting for " + path.getFileName() + " to sync, " + pending.size() + " records pending");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to close " + path.getFileName() + ": " + e);
+        } finally {
+            closed = true;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        appendAt = channel.size();
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) reader.close();
+        reader = null;
+    }
+
+    private void addOffset(String user, long offset) {
+        // slot 0 holds the count, the array grows by doubling
+        long[] at = offsets.get(user);
+        if (at == null) {
+            at = new long[2];
+        } else if (at[0] + 1 == at.length) {
+            at = Arrays.copyOf(at, at.length * 2);
+        }
+        at[(int) ++at[0]] = offset;
+        offsets.put(user, at);
+    }
+
+    private void writeSnapshot(Map<String, Map<String, Object>> accounts) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".compact");
+        Files.createDirectories(path.getParent());
+        Map<String, long[]> written = new HashMap<>(accounts.size() * 2);
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long at = 0;
+            for (Map.Entry<String, Map<String, Object>> e : accounts.entrySet()) {
+                ByteBuffer frame = encode(e.getKey(), e.getValue());
+                written.put(e.getKey(), new long[] {1, at});
+                at += frame.remaining();
+                writeFully(out, frame);
+            }
+            out.force(true);
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        offsets.clear();
+        offsets.putAll(written);
+        recordCount = accounts.size();
+    }
+
+    private static void merge(Map<String, Map<String, Object>> merged, String user, Map<String, Object> fields) {
+        Map<String, Object> account = merged.computeIfAbsent(user, k -> new LinkedHashMap<>());
+        for (Map.Entry<String, Object> f : fields.entrySet()) {
+            if (f.getValue() == null) account.remove(f.getKey());
+            else account.put(f.getKey(), f.getValue());
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) ch.write(buf);
+    }
+
+    // One frame at a known offset, checked like replay checks it
+    private static byte[] readFrame(FileChannel ch, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(ch, header, offset);
+        header.flip();
+        int length = header.getInt();
+        int expected = header.getInt();
+        if (length <= 0 || length > MAX_RECORD_SIZE) throw new IOException("Bad journal record at " + offset);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(ch, payload, offset + 8);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        if ((int) crc.getValue() != expected) throw new IOException("Corrupt journal record at " + offset);
+        return payload.array();
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, position + buf.position());
+            if (n < 0) throw new EOFException("Journal ends before record at " + position);
+        }
+    }
+
+    // Returns the offset just past the last intact record
+    private long replay(Path path, RecordSink sink) throws IOException {
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) break;
+
+                byte[] payload = new byte[length];
+                int expected;
+                try {
+                    expected = in.readInt();
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != expected) break;
+
+                decode(payload, good, sink);
+                good += 8 + length;
+            }
+        }
+        return good;
+    }
+
+    private static ByteBuffer encode(String user, Map<String, Object> fields) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_VERSION);
+        writeString(out, user);
+        out.writeInt(fields.size());
+        for (Map.Entry<String, Object> f : fields.entrySet()) {
+            writeString(out, f.getKey());
+            Object value = f.getValue();
+            if (value == null) {
+                out.writeByte(TYPE_NULL);
+            } else if (value instanceof Boolean b) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean(b);
+            } else if (value instanceof byte[] b) {
+                out.writeByte(TYPE_BYTES);
+                out.writeInt(b.length);
+                out.write(b);
+            } else {
+                out.writeByte(TYPE_STRING);
+                writeString(out, value.toString());
+            }
+        }
+        out.flush();
+
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        return frame;
+    }
+
+    // A record of an unknown version is intact (its CRC matched) but unreadable here: skip it, not the log.
+    // Fields of an unknown type are skipped by their length, the rest of the record still applies.
+    private void decode(byte[] payload, long offset, RecordSink sink) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String user;
+        Map<String, Object> fields;
+        boolean skipped = false;
+        try {
+            byte version = in.readByte();
+            if (version != RECORD_VERSION) {
+                unknownRecords++;
+                return;
+            }
+
+            user = readString(in);
+            int count = in.readInt();
+            fields = new LinkedHashMap<>(Math.max(0, Math.min(count, 64)) * 2);
+            for (int i = 0; i < count; i++) {
+                String name = readString(in);
+                byte type = in.readByte();
+                switch (type) {
+                    case TYPE_NULL -> fields.put(name, null);
+                    case TYPE_BOOLEAN -> fields.put(name, in.readBoolean());
+                    case TYPE_STRING -> fields.put(name, readString(in));
+                    case TYPE_BYTES -> fields.put(name, readBytes(in));
+                    default -> {
+                        readBytes(in);
+                        skipped = true;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // intact but not laid out the way this version expects
+            unknownRecords++;
+            return;
+        }
+        if (skipped) unknownRecords++;
+        sink.accept(offset, user, fields);
+    }
+
+    // writeUTF is capped at 64KB, inventories can be larger
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) throw new EOFException("Field length " + length + " past the end of the record");
+        byte[] b = new byte[length];
+        in.readFully(b);
+        return b;
+    }
+}
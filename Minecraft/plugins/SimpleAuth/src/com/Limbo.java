@@ -0,0 +1,108 @@
+package com.simpleauth;
+
+import org.bukkit.Difficulty;
+import org.bukkit.GameRule;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.WorldCreator;
+import org.bukkit.block.Biome;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
+import org.bukkit.generator.BiomeProvider;
+import org.bukkit.generator.ChunkGenerator;
+import org.bukkit.generator.WorldInfo;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.util.Vector;
+
+import java.util.List;
+import java.util.Random;
+
+// Where players wait until they log in: an empty void world with the smallest view distance, so a
+// player at the login prompt doesn't make the server load or generate chunks of the real world.
+// The real world is only sent once loadPlayerData (or a resume) teleports them to their saved spot.
+// If the world can't be created, players wait in the sky above where they joined like before.
+public class Limbo {
+    private final Plugin plugin;
+    private final boolean enabled;
+    private final String worldName;
+    private final int viewDistance;
+    private World world;
+
+    public Limbo(Plugin plugin, ConfigurationSection config) {
+        this.plugin = plugin;
+        this.enabled = config == null || config.getBoolean("enabled", true);
+        this.worldName = config == null ? "simpleauth_limbo" : config.getString("world", "simpleauth_limbo");
+        this.viewDistance = Math.max(2, config == null ? 2 : config.getInt("viewDistance", 2)); // 2 is the lowest the server accepts
+    }
+
+    // Main thread, on enable
+    public void open() {
+        if (!enabled) return;
+        try {
+            world = new WorldCreator(worldName)
+                    .generator(new VoidGenerator())
+                    .biomeProvider(new VoidBiomes())
+                    .generateStructures(false)
+                    .createWorld();
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Failed to create limbo world " + worldName + ": " + e.getMessage());
+        }
+        if (world == null) return;
+        world.setViewDistance(viewDistance);
+        world.setSimulationDistance(viewDistance);
+        world.setAutoSave(false); // nothing in it worth saving
+        world.setSpawnFlags(false, false);
+        world.setDifficulty(Difficulty.PEACEFUL);
+        world.setGameRule(GameRule.SPAWN_CHUNK_RADIUS, 0); // no spawn chunks kept loaded
+        world.setGameRule(GameRule.DO_DAYLIGHT_CYCLE, false);
+        world.setGameRule(GameRule.DO_WEATHER_CYCLE, false);
+        world.setGameRule(GameRule.DO_MOB_SPAWNING, false);
+        world.setGameRule(GameRule.RANDOM_TICK_SPEED, 0);
+    }
+
+    public boolean isActive() {
+        return world != null;
+    }
+
+    public boolean contains(World w) {
+        return world != null && world.equals(w);
+    }
+
+    // Parks an unauthenticated player. Stays at SKY_HEIGHT in both modes so the move guard applies unchanged.
+    public void enter(Player p) {
+        Location loc;
+        if (world != null) {
+            loc = new Location(world, 0.5, UnauthenticatedPlayers.SKY_HEIGHT, 0.5);
+        } else {
+            loc = p.getLocation().clone();
+            loc.setY(UnauthenticatedPlayers.SKY_HEIGHT);
+        }
+        loc.setPitch(0); // look straight ahead
+        loc.setYaw(0);
+        p.teleport(loc);
+        p.setVelocity(new Vector(0, 0, 0));
+        p.setAllowFlight(true);
+        p.setFlying(true);
+    }
+
+    // Every chunk is left empty: no noise, surface, caves, decorations, mobs or structures
+    private static class VoidGenerator extends ChunkGenerator {
+        @Override
+        public Location getFixedSpawnLocation(World world, Random random) {
+            return new Location(world, 0.5, UnauthenticatedPlayers.SKY_HEIGHT, 0.5);
+        }
+    }
+
+    // A single biome, so the server doesn't run the vanilla biome source for empty chunks
+    private static class VoidBiomes extends BiomeProvider {
+        @Override
+        public Biome getBiome(WorldInfo worldInfo, int x, int y, int z) {
+            return Biome.THE_VOID;
+        }
+
+        @Override
+        public List<Biome> getBiomes(WorldInfo worldInfo) {
+            return List.of(Biome.THE_VOID);
+        }
+    }
+}
@@ -2,48 +2,238 @@ package com.simpleauth;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.sun.net.httpserver.*;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.Executor;
 
 public class LocalApiServer {
+    private static final long LONG_POLL_MILLIS = 25000;
+    private static final long SIGNATURE_WINDOW_MILLIS = 5 * 60 * 1000; // same as the supervisor's AUTH_WINDOW_MS
+
     private final Plugin plugin;
+    private final Executor executor;
+    private final String secret; // signs POST /admission; empty means loopback clients only
     private HttpServer server;
 
     public LocalApiServer(Plugin plugin, String bind, int port) throws IOException {
         this.plugin = plugin;
+        this.executor = ((SimpleAuth) plugin).getExecutor().get("http");
+        this.secret = plugin.getConfig().getString("local.secret", "");
         server = HttpServer.create(new InetSocketAddress(bind, port), 0);
         server.createContext("/online", this::handleOnline);
-        server.setExecutor(Executors.newFixedThreadPool(2));
+        server.createContext("/events", this::handleEvents);
+        server.createContext("/ratelimit", this::handleRateLimit);
+        server.createContext("/presence", this::handlePresence);
+        server.createContext("/notifier", this::handleNotifier);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/sessions", this::handleSessions);
+        server.createContext("/admission", this::handleAdmission);
+        server.createContext("/ready", this::handleReady);
+        server.setExecutor(executor);
+    }
+
+    // Serves the pre-built snapshot. ETag/If-None-Match gives 304s, ?since=<version> long-polls
+    // until a newer version exists without holding an executor thread while waiting.
+    private void handleOnline(HttpExchange ex) throws IOException {
+        OnlineSnapshots snapshots = ((SimpleAuth) plugin).getSnapshots();
+        long since = parseSince(ex.getRequestURI().getQuery());
+        if (since < 0) {
+            sendSnapshot(ex, snapshots.current());
+            return;
+        }
+
+        snapshots.awaitNewer(since, LONG_POLL_MILLIS).thenAcceptAsync(snap -> {
+            try {
+                sendSnapshot(ex, snap);
+            } catch (IOException e) {
+                ex.close();
+            }
+        }, executor);
+    }
+
+    // Long-lived SSE stream; resumes after Last-Event-ID (or ?since=<id>) when given
+    private void handleEvents(HttpExchange ex) throws IOException {
+        long since = parseSince(ex.getRequestURI().getQuery());
+        String lastEventId = ex.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId != null) {
+            try {
+                since = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException ignored) {}
+        }
+        ((SimpleAuth) plugin).getEvents().subscribe(ex, since);
+    }
+
+    private void sendSnapshot(HttpExchange ex, OnlineSnapshots.Snapshot snap) throws IOException {
+        ex.getResponseHeaders().add("ETag", snap.etag());
+        ex.getResponseHeaders().add("X-Presence-Version", Long.toString(snap.version()));
+        if (snap.etag().equals(ex.getRequestHeaders().getFirst("If-None-Match"))) {
+            ex.sendResponseHeaders(304, -1);
+            ex.close();
+            return;
+        }
+
+        send(ex, 200, "application/json; charset=utf-8", snap.body());
+    }
+
+    private static long parseSince(String query) {
+        if (query == null) return -1;
+        for (String param : query.split("&")) {
+            if (param.startsWith("since=")) {
+                try {
+                    return Long.parseLong(param.substring(6));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
     }
 
-   private void handleOnline(HttpExchange ex) throws IOException {
+    private void handleRateLimit(HttpExchange ex) throws IOException {
+        LoginRateLimiter limiter = ((SimpleAuth) plugin).getRateLimiter();
         JsonObject result = new JsonObject();
+        result.addProperty("allowed", limiter.getAllowed());
+        result.addProperty("throttled", limiter.getThrottled());
+        result.addProperty("lockedOut", limiter.getLockedOut());
+        result.addProperty("failures", limiter.getFailures());
+        result.addProperty("untracked", limiter.getUntracked());
+        result.addProperty("trackedKeys", limiter.getTrackedKeys());
+
+        sendJson(ex, 200, result);
+    }
+
+    private void handlePresence(HttpExchange ex) throws IOException {
+        PresenceTracker presence = ((SimpleAuth) plugin).getPresence();
+        JsonObject result = new JsonObject();
+        result.addProperty("online", presence.getOnlineCount());
+        result.addProperty("eventDisconnects", presence.getEventDisconnects());
+        result.addProperty("sweepConnects", presence.getSweepConnects());
+        result.addProperty("sweepDisconnects", presence.getSweepDisconnects());
+        PresenceEventFeed events = ((SimpleAuth) plugin).getEvents();
+        result.addProperty("eventSubscribers", events.getSubscriberCount());
+        result.addProperty("eventsPublished", events.getPublished());
+        result.addProperty("droppedSubscribers", events.getDroppedSubscribers());
+
+        sendJson(ex, 200, result);
+    }
+
+    private void handleNotifier(HttpExchange ex) throws IOException {
+        ExternalNotifier notifier = ((SimpleAuth) plugin).getNotifier();
+        JsonObject result = new JsonObject();
+        result.addProperty("queueDepth", notifier.getQueueDepth());
+        result.addProperty("sent", notifier.getSent());
+        result.addProperty("coalesced", notifier.getCoalesced());
+        result.addProperty("dropped", notifier.getDropped());
+        result.addProperty("retries", notifier.getRetries());
+        result.addProperty("failed", notifier.getFailed());
+        result.addProperty("notDurable", notifier.getNotDurable());
+        result.addProperty("outboxPending", notifier.getOutboxPending());
+
+        sendJson(ex, 200, result);
+    }
+
+    // Reads the session registry directly; it is safe to read off the main thread
+    private void handleSessions(HttpExchange ex) throws IOException {
         JsonArray arr = new JsonArray();
-        for (Player p : Bukkit.getOnlinePlayers()) {
+        for (SessionRegistry.Session s : ((SimpleAuth) plugin).getUserManager().getSessions().all()) {
             JsonObject o = new JsonObject();
-            String authUser = ((SimpleAuth) plugin).getUserManager().getAuthUser(p);
-            o.addProperty("name", authUser != null ? authUser : "Not-Logged");
-            var addr = p.getAddress();
-            o.addProperty("ip", addr == null ? "" : addr.getAddress().getHostAddress());
+            o.addProperty("account", s.account());
+            o.addProperty("uuid", s.player().toString());
+            o.addProperty("ip", s.ip());
+            o.addProperty("loginTime", s.loginTime());
             arr.add(o);
         }
+        JsonObject result = new JsonObject();
+        result.add("sessions", arr);
 
-        result.add("players", arr);
-        result.addProperty("port", Bukkit.getPort()); // 👈 add actual MC server port
+        sendJson(ex, 200, result);
+    }
+
+    // GET: cache state. POST: a sync message from the supervisor (see AdmissionCache.apply);
+    // 409 with the current version means the supervisor has to send the full set.
+    private void handleAdmission(HttpExchange ex) throws IOException {
+        AdmissionCache admission = ((SimpleAuth) plugin).getAdmission();
+        int status = 200;
+        JsonObject result = new JsonObject();
+        if ("POST".equals(ex.getRequestMethod())) {
+            byte[] body = ex.getRequestBody().readAllBytes();
+            if (!isTrusted(ex, body)) {
+                result.addProperty("error", "forbidden");
+                sendJson(ex, 403, result);
+                return;
+            }
+            try {
+                admission.apply(JsonParser.parseString(new String(body, StandardCharsets.UTF_8)).getAsJsonObject());
+            } catch (AdmissionCache.VersionMismatchException e) {
+                status = 409;
+            } catch (RuntimeException e) {
+                status = 400;
+                result.addProperty("error", "malformed sync message");
+            }
+        }
+        result.addProperty("enabled", admission.isEnabled());
+        result.addProperty("version", admission.getVersion());
+        result.addProperty("lastSyncAt", admission.getLastSyncAt());
+        result.addProperty("allowed", admission.getAllowedCount());
+        result.addProperty("blocked", admission.getBlockedCount());
+        result.addProperty("admitted", admission.getAdmitted());
+        result.addProperty("admittedUnsynced", admission.getAdmittedUnsynced());
+        result.addProperty("deniedBlocked", admission.getDeniedBlocked());
+        result.addProperty("deniedUnknown", admission.getDeniedUnknown());
+
+        sendJson(ex, status, result);
+    }
+
+    // Same scheme as the supervisor's verifyAuth: x-signature is the hex HMAC-SHA256 of
+    // "<x-timestamp>:<body>" under the shared secret. Without a secret only loopback may write.
+    private boolean isTrusted(HttpExchange ex, byte[] body) {
+        if (secret.isEmpty()) return ex.getRemoteAddress().getAddress().isLoopbackAddress();
+
+        String signature = ex.getRequestHeaders().getFirst("X-Signature");
+        String timestamp = ex.getRequestHeaders().getFirst("X-Timestamp");
+        if (signature == null || timestamp == null) return false;
+        try {
+            if (Math.abs(System.currentTimeMillis() - Long.parseLong(timestamp)) > SIGNATURE_WINDOW_MILLIS) return false;
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            mac.update((timestamp + ":").getBytes(StandardCharsets.UTF_8));
+            byte[] expected = mac.doFinal(body);
+            return MessageDigest.isEqual(expected, HexFormat.of().parseHex(signature));
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return false; // timestamp not a number or signature not hex
+        }
+    }
+
+    // Readiness probe: 200 once logins are accepted, 503 while starting; both carry the stage timings
+    private void handleReady(HttpExchange ex) throws IOException {
+        StartupStages stages = ((SimpleAuth) plugin).getStages();
+        sendJson(ex, stages.isReady() ? 200 : 503, stages.toJson());
+    }
+
+    private void handleMetrics(HttpExchange ex) throws IOException {
+        send(ex, 200, "text/plain; version=0.0.4; charset=utf-8", Metrics.render((SimpleAuth) plugin).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendJson(HttpExchange ex, int status, JsonObject body) throws IOException {
+        send(ex, status, "application/json; charset=utf-8", body.toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-        byte[] resp = result.toString().getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
-        ex.sendResponseHeaders(200, resp.length);
+    private static void send(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        ex.getResponseHeaders().add("Content-Type", contentType);
+        ex.sendResponseHeaders(status, body.length);
         try (OutputStream os = ex.getResponseBody()) {
-            os.write(resp);
+            os.write(body);
         }
     }
 
@@ -7,8 +7,14 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
 public class LoginCommand implements CommandExecutor {
     private final SimpleAuth plugin;
+    private final Set<UUID> pending = new HashSet<>(); // players waiting on a password check
 
     public LoginCommand(SimpleAuth plugin) {
         this.plugin = plugin;
@@ -17,6 +23,10 @@ public class LoginCommand implements CommandExecutor {
     @Override
     public boolean onCommand(CommandSender sender, Command cmd, String label, String[] args) {
         if (!(sender instanceof Player p)) return false;
+        if (!plugin.getStages().isReady()) {
+            p.sendMessage("§cLogins are unavailable right now, please try again later.");
+            return true;
+        }
         if (args.length != 2) {
             p.sendMessage("§cUsage: /login <user> <pass>");
             return true;
@@ -24,6 +34,16 @@ public class LoginCommand implements CommandExecutor {
 
         String user = args[0];
         String pass = args[1];
+        var addr = p.getAddress();
+        String ip = addr == null ? null : addr.getAddress().getHostAddress();
+        String account = plugin.getUserManager().userExists(user) ? user : null;
+
+        // Throttle before any credential work is done
+        long waitMillis = plugin.getRateLimiter().tryAcquire(ip, account);
+        if (waitMillis > 0) {
+            p.sendMessage("§cToo many login attempts, try again in " + ((waitMillis + 999) / 1000) + "s.");
+            return true;
+        }
 
         // If this account is already logged in elsewhere
         if (plugin.getUserManager().isUserAlreadyLogged(user)) {
@@ -31,31 +51,100 @@ public class LoginCommand implements CommandExecutor {
             return true;
         }
 
-        if (plugin.getUserManager().checkCredentials(user, pass)) {
-            // If this player is already authenticated, revert their privileges first
-            if (plugin.getUserManager().isAuthenticated(p)) {
-                String oldUser = plugin.getUserManager().getAuthUser(p);
-                if (oldUser != null) {
-                    revokeAdminPrivileges(p); // remove admin before switching user
-                    plugin.getUserManager().unsetAuthenticated(p.getUniqueId().toString());
-                    p.sendMessage("§eYou were logged out from '" + oldUser + "'.");
-                }
-            }
+        if (!pending.add(p.getUniqueId())) {
+            p.sendMessage("§eLogin already in progress...");
+            return true;
+        }
 
-            plugin.getUserManager().setAuthenticated(p, user);
-            plugin.getUserManager().loadPlayerData(p, user);
-            
-            p.sendMessage("§aLogged in as " + user);
+        CompletableFuture<Boolean> check;
+        try {
+            // Warm the account's saved location while the password is being hashed
+            if (account != null) plugin.getUserManager().prefetchDestination(account);
+            check = plugin.getUserManager().checkCredentials(user, pass);
+        } catch (RuntimeException e) {
+            // never leave the player stuck in "already in progress"
+            pending.remove(p.getUniqueId());
+            plugin.getLogger().warning("Login of " + p.getName() + " failed: " + e);
+            p.sendMessage("§cServer is busy, please try again.");
+            return true;
+        }
 
-            // Grant admin powers only if this is the superuser
-            if (user.equalsIgnoreCase(UserManager.SUPERUSER_NAME)) {
-                grantAdminPrivileges(p);
-            }
+        // Password hashing runs off the main thread, the session is applied back on it
+        check.whenComplete((ok, err) ->
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (!p.isOnline() || err != null) {
+                        pending.remove(p.getUniqueId());
+                        if (err != null) p.sendMessage("§cServer is busy, please try again.");
+                        return;
+                    }
+                    if (ok) {
+                        Metrics.LOGIN_SUCCESS.increment();
+                        plugin.getRateLimiter().onSuccess(ip, account);
+                    } else {
+                        Metrics.LOGIN_FAILURE.increment();
+                        plugin.getRateLimiter().onFailure(ip, account);
+                    }
+                    finishLogin(p, user, ok);
+                }));
+        return true;
+    }
 
-        } else {
+    private void finishLogin(Player p, String user, boolean valid) {
+        if (!valid) {
+            pending.remove(p.getUniqueId());
             p.sendMessage("§cInvalid credentials.");
+            return;
+        }
+
+        // Someone else may have logged into this account while we were hashing
+        if (plugin.getUserManager().isUserAlreadyLogged(user)) {
+            pending.remove(p.getUniqueId());
+            p.sendMessage("§cThat account is already logged in.");
+            return;
+        }
+
+        // In cluster mode the other servers have to agree first; otherwise this completes right away
+        CompletableFuture<Boolean> lease = plugin.getUserManager().acquireAccount(user);
+        if (lease.isDone()) {
+            claimSession(p, user, lease.getNow(false), null);
+        } else {
+            lease.whenComplete((granted, err) ->
+                    Bukkit.getScheduler().runTask(plugin, () -> claimSession(p, user, granted, err)));
+        }
+    }
+
+    private void claimSession(Player p, String user, Boolean granted, Throwable err) {
+        pending.remove(p.getUniqueId());
+        if (err != null || !Boolean.TRUE.equals(granted)) {
+            if (p.isOnline()) p.sendMessage("§cThat account is logged in on another server.");
+            return;
+        }
+        if (!p.isOnline() || plugin.getUserManager().isUserAlreadyLogged(user)) {
+            plugin.getUserManager().releaseAccount(user);
+            if (p.isOnline()) p.sendMessage("§cThat account is already logged in.");
+            return;
+        }
+
+        // If this player is already authenticated, revert their privileges first
+        if (plugin.getUserManager().isAuthenticated(p)) {
+            String oldUser = plugin.getUserManager().getAuthUser(p);
+            if (oldUser != null) {
+                revokeAdminPrivileges(p); // remove admin before switching user
+                plugin.getUserManager().unsetAuthenticated(p.getUniqueId());
+                plugin.onPlayerLoggedOut(p.getUniqueId(), oldUser);
+                p.sendMessage("§eYou were logged out from '" + oldUser + "'.");
+            }
+        }
+
+        plugin.getUserManager().setAuthenticated(p, user);
+        plugin.getUserManager().loadPlayerData(p, user);
+
+        p.sendMessage("§aLogged in as " + user);
+
+        // Grant admin powers only if this is the superuser
+        if (user.equalsIgnoreCase(UserManager.SUPERUSER_NAME)) {
+            grantAdminPrivileges(p);
         }
-        return true;
     }
 
     private void grantAdminPrivileges(Player p) {
@@ -0,0 +1,172 @@
+package com.simpleauth;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Token buckets per IP and per account, plus an exponential lockout after repeated failures.
+// Buckets are immutable states swapped with CAS, so the check never blocks the main thread.
+public class LoginRateLimiter {
+    private final double burst;
+    private final double tokensPerNano;
+    private final int freeFailures;
+    private final long baseLockoutNanos;
+    private final long maxLockoutNanos;
+    private final long idleExpiryNanos;
+    private final int maxEntries;
+
+    private final Map<String, AtomicReference<Bucket>> buckets = new ConcurrentHashMap<>();
+    // Shared by every key that finds the table full of locked buckets, so overflow is throttled as one
+    private final AtomicReference<Bucket> overflow;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder lockedOut = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder untracked = new LongAdder();
+
+    private record Bucket(double tokens, long refilledAt, int failures, long lockedUntil) {}
+
+    public LoginRateLimiter(ConfigurationSection config) {
+        this.burst = config == null ? 5 : config.getDouble("burst", 5);
+        double perMinute = config == null ? 6 : config.getDouble("refillPerMinute", 6);
+        this.tokensPerNano = perMinute / TimeUnit.MINUTES.toNanos(1);
+        this.freeFailures = config == null ? 3 : config.getInt("freeFailures", 3);
+        this.baseLockoutNanos = TimeUnit.SECONDS.toNanos(config == null ? 5 : config.getLong("baseLockoutSeconds", 5));
+        this.maxLockoutNanos = TimeUnit.SECONDS.toNanos(config == null ? 900 : config.getLong("maxLockoutSeconds", 900));
+        this.idleExpiryNanos = TimeUnit.MINUTES.toNanos(config == null ? 30 : config.getLong("expiryMinutes", 30));
+        this.maxEntries = config == null ? 10000 : config.getInt("maxEntries", 10000);
+        long now = System.nanoTime();
+        this.overflow = new AtomicReference<>(new Bucket(burst, now, 0, now));
+    }
+
+    // Returns 0 if the attempt may go ahead, otherwise how many millis to wait.
+    // account should only be passed for existing accounts, so made-up names can't grow the table.
+    public long tryAcquire(String ip, String account) {
+        long now = System.nanoTime();
+        long wait = Math.max(lockedFor(ipKey(ip), now), lockedFor(accountKey(account), now));
+        if (wait > 0) {
+            lockedOut.increment();
+            return TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+        }
+
+        wait = Math.max(take(ipKey(ip), now), take(accountKey(account), now));
+        if (wait > 0) {
+            throttled.increment();
+            return TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+        }
+        allowed.increment();
+        return 0;
+    }
+
+    public void onFailure(String ip, String account) {
+        failures.increment();
+        long now = System.nanoTime();
+        recordFailure(ipKey(ip), now);
+        recordFailure(accountKey(account), now);
+    }
+
+    public void onSuccess(String ip, String account) {
+        clearFailures(ipKey(ip));
+        clearFailures(accountKey(account));
+    }
+
+    // Drops buckets that are full again and not locked; run periodically off the main thread
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.entrySet().removeIf(e -> {
+            Bucket b = e.getValue().get();
+            return now - b.refilledAt() > idleExpiryNanos && now - b.lockedUntil() > 0;
+        });
+    }
+
+    public long getAllowed() { return allowed.sum(); }
+    public long getThrottled() { return throttled.sum(); }
+    public long getLockedOut() { return lockedOut.sum(); }
+    public long getFailures() { return failures.sum(); }
+    public long getUntracked() { return untracked.sum(); }
+    public int getTrackedKeys() { return buckets.size(); }
+
+    private long lockedFor(String key, long now) {
+        if (key == null) return 0;
+        AtomicReference<Bucket> ref = buckets.get(key);
+        if (ref == null) return 0;
+        return Math.max(0, ref.get().lockedUntil() - now);
+    }
+
+    private long take(String key, long now) {
+        AtomicReference<Bucket> ref = bucket(key, now);
+        if (ref == null) return 0;
+        while (true) {
+            Bucket b = ref.get();
+            double tokens = Math.min(burst, b.tokens() + (now - b.refilledAt()) * tokensPerNano);
+            if (tokens < 1) return (long) ((1 - tokens) / tokensPerNano);
+            if (ref.compareAndSet(b, new Bucket(tokens - 1, now, b.failures(), b.lockedUntil()))) return 0;
+        }
+    }
+
+    private void recordFailure(String key, long now) {
+        AtomicReference<Bucket> ref = bucket(key, now);
+        if (ref == null) return;
+        while (true) {
+            Bucket b = ref.get();
+            int count = b.failures() + 1;
+            long lockedUntil = b.lockedUntil();
+            if (count > freeFailures) {
+                int shift = Math.min(count - freeFailures - 1, 20);
+                lockedUntil = now + Math.min(maxLockoutNanos, baseLockoutNanos << shift);
+            }
+            if (ref.compareAndSet(b, new Bucket(b.tokens(), b.refilledAt(), count, lockedUntil))) return;
+        }
+    }
+
+    private void clearFailures(String key) {
+        if (key == null) return;
+        AtomicReference<Bucket> ref = buckets.get(key);
+        if (ref == null) return;
+        ref.updateAndGet(b -> new Bucket(b.tokens(), b.refilledAt(), 0, b.lockedUntil()));
+    }
+
+    private AtomicReference<Bucket> bucket(String key, long now) {
+        if (key == null) return null;
+        AtomicReference<Bucket> ref = buckets.get(key);
+        if (ref != null) return ref;
+        if (buckets.size() >= maxEntries && !makeRoom(now)) {
+            untracked.increment(); // never fail open: junk keys must not switch throttling off
+            return overflow;
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicReference<>(new Bucket(burst, now, 0, now)));
+    }
+
+    // Table full: drops idle buckets, then the least recently used sixteenth of those not locked out.
+    // Locked buckets are never evicted, or flooding the table would lift lockouts.
+    private synchronized boolean makeRoom(long now) {
+        if (buckets.size() < maxEntries) return true;
+        sweep();
+        if (buckets.size() < maxEntries) return true;
+        List<Map.Entry<String, Long>> unlocked = new ArrayList<>();
+        for (Map.Entry<String, AtomicReference<Bucket>> e : buckets.entrySet()) {
+            Bucket b = e.getValue().get();
+            if (now - b.lockedUntil() > 0) unlocked.add(Map.entry(e.getKey(), b.refilledAt()));
+        }
+        if (unlocked.isEmpty()) return false;
+        unlocked.sort((a, b) -> Long.compare(a.getValue(), b.getValue()));
+        int evict = Math.min(unlocked.size(), Math.max(1, maxEntries / 16));
+        for (int i = 0; i < evict; i++) buckets.remove(unlocked.get(i).getKey());
+        return true;
+    }
+
+    private static String ipKey(String ip) {
+        return ip == null ? null : "ip:" + ip;
+    }
+
+    private static String accountKey(String account) {
+        return account == null ? null : "user:" + account.toLowerCase();
+    }
+}
@@ -0,0 +1,241 @@
+package com.simpleauth;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide instruments for the hot paths, rendered by LocalApiServer as Prometheus text.
+// Recording only increments pre-allocated LongAdders, so it is safe to call on the main thread.
+public final class Metrics {
+    public static final Histogram CHECK_CREDENTIALS = new Histogram("simpleauth_check_credentials_seconds",
+            "Password check including time queued for a hash thread");
+    public static final Histogram LOAD_PLAYER_DATA = new Histogram("simpleauth_load_player_data_seconds",
+            "Login or resume until the player is placed with their inventory (decode and chunk loads run off the main thread)");
+    public static final Histogram CHUNK_PREFETCH = new Histogram("simpleauth_chunk_prefetch_seconds",
+            "Loading every chunk around a login destination that wasn't already warm");
+    public static final Histogram SAVE_PLAYER_DATA = new Histogram("simpleauth_save_player_data_seconds",
+            "Capturing, encoding and queueing one player's changed state");
+    public static final Histogram SAVE_ALL = new Histogram("simpleauth_save_all_seconds",
+            "Autosave of every online player");
+    public static final Histogram INVENTORY_ENCODE = new Histogram("simpleauth_inventory_encode_seconds",
+            "Inventory serialization");
+    public static final Histogram INVENTORY_DECODE = new Histogram("simpleauth_inventory_decode_seconds",
+            "Inventory deserialization");
+    public static final Histogram SUPERVISOR_REQUEST = new Histogram("simpleauth_supervisor_request_seconds",
+            "Supervisor HTTP round trip");
+
+    public static final LongAdder LOGIN_SUCCESS = new LongAdder();
+    public static final LongAdder LOGIN_FAILURE = new LongAdder();
+    public static final LongAdder SAVE_WRITTEN = new LongAdder();
+    public static final LongAdder SAVE_UNCHANGED = new LongAdder();
+
+    public enum Handler { PRE_LOGIN, JOIN, QUIT, ITEM_DROP, COMMAND, MOVE, DAMAGE }
+    private static final LongAdder[] HANDLER_CALLS = new LongAdder[Handler.values().length];
+
+    static {
+        for (int i = 0; i < HANDLER_CALLS.length; i++) HANDLER_CALLS[i] = new LongAdder();
+    }
+
+    private Metrics() {}
+
+    public static void handlerCalled(Handler handler) {
+        HANDLER_CALLS[handler.ordinal()].increment();
+    }
+
+    // Fixed buckets from 10us to 10s; enough resolution for a 50ms tick and for PBKDF2
+    public static final class Histogram {
+        private static final long[] BOUNDS_MICROS = {
+                10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+                100_000, 250_000, 500_000, 1_000_000, 2_500_000, 10_000_000
+        };
+
+        private final String name;
+        private final String help;
+        private final LongAdder[] buckets = new LongAdder[BOUNDS_MICROS.length + 1]; // last one is +Inf
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+            for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+        }
+
+        public void record(long nanos) {
+            long micros = nanos / 1000;
+            int i = 0;
+            while (i < BOUNDS_MICROS.length && micros > BOUNDS_MICROS[i]) i++;
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        // Convenience for call sites that took a System.nanoTime() at the start
+        public void recordSince(long startNanos) {
+            record(System.nanoTime() - startNanos);
+        }
+
+        private void render(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < BOUNDS_MICROS.length ? Double.toString(BOUNDS_MICROS[i] / 1e6) : "+Inf";
+                out.append(name).append("_bucket{le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum ").append(sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1)).append('\n');
+            out.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+
+    // Prometheus text exposition format 0.0.4
+    public static String render(SimpleAuth plugin) {
+        StringBuilder out = new StringBuilder(8192);
+        for (Histogram h : new Histogram[] {CHECK_CREDENTIALS, LOAD_PLAYER_DATA, CHUNK_PREFETCH, SAVE_PLAYER_DATA, SAVE_ALL,
+                INVENTORY_ENCODE, INVENTORY_DECODE, SUPERVISOR_REQUEST}) {
+            h.render(out);
+        }
+
+        header(out, "simpleauth_logins_total", "counter", "Completed password checks by result");
+        out.append("simpleauth_logins_total{result=\"success\"} ").append(LOGIN_SUCCESS.sum()).append('\n');
+        out.append("simpleauth_logins_total{result=\"failure\"} ").append(LOGIN_FAILURE.sum()).append('\n');
+
+        header(out, "simpleauth_player_saves_total", "counter", "Player saves by outcome; unchanged players are not encoded");
+        out.append("simpleauth_player_saves_total{result=\"written\"} ").append(SAVE_WRITTEN.sum()).append('\n');
+        out.append("simpleauth_player_saves_total{result=\"unchanged\"} ").append(SAVE_UNCHANGED.sum()).append('\n');
+
+        ResumeTokens resume = plugin.getUserManager().getResumeTokens();
+        header(out, "simpleauth_resume_tokens_total", "counter", "Resume tokens by outcome");
+        out.append("simpleauth_resume_tokens_total{outcome=\"issued\"} ").append(resume.getIssued()).append('\n');
+        out.append("simpleauth_resume_tokens_total{outcome=\"claimed\"} ").append(resume.getClaimed()).append('\n');
+        out.append("simpleauth_resume_tokens_total{outcome=\"expired\"} ").append(resume.getExpired()).append('\n');
+        header(out, "simpleauth_resume_tokens", "gauge", "Resume tokens waiting for a reconnect");
+        out.append("simpleauth_resume_tokens ").append(resume.size()).append('\n');
+
+        LoginRateLimiter limiter = plugin.getRateLimiter();
+        header(out, "simpleauth_login_rejected_total", "counter", "Login attempts refused by the rate limiter");
+        out.append("simpleauth_login_rejected_total{reason=\"throttled\"} ").append(limiter.getThrottled()).append('\n');
+        out.append("simpleauth_login_rejected_total{reason=\"locked_out\"} ").append(limiter.getLockedOut()).append('\n');
+
+        AdmissionCache admission = plugin.getAdmission();
+        header(out, "simpleauth_admission_total", "counter", "Connections checked before login by decision");
+        out.append("simpleauth_admission_total{result=\"admit\"} ").append(admission.getAdmitted()).append('\n');
+        out.append("simpleauth_admission_total{result=\"admit_unsynced\"} ").append(admission.getAdmittedUnsynced()).append('\n');
+        out.append("simpleauth_admission_total{result=\"deny_blocked\"} ").append(admission.getDeniedBlocked()).append('\n');
+        out.append("simpleauth_admission_total{result=\"deny_unknown\"} ").append(admission.getDeniedUnknown()).append('\n');
+        header(out, "simpleauth_admission_entries", "gauge", "Admission cache entries by list");
+        out.append("simpleauth_admission_entries{list=\"allowed\"} ").append(admission.getAllowedCount()).append('\n');
+        out.append("simpleauth_admission_entries{list=\"blocked\"} ").append(admission.getBlockedCount()).append('\n');
+        header(out, "simpleauth_admission_version", "gauge", "Last supervisor sync version applied (0 = never synced)");
+        out.append("simpleauth_admission_version ").append(admission.getVersion()).append('\n');
+
+        StartupStages stages = plugin.getStages();
+        header(out, "simpleauth_ready", "gauge", "1 once startup finished and logins are accepted");
+        out.append("simpleauth_ready ").append(stages.isReady() ? 1 : 0).append('\n');
+        header(out, "simpleauth_startup_seconds", "gauge", "Time from plugin enable to ready (-1 while starting)");
+        out.append("simpleauth_startup_seconds ").append(stages.isReady() ? stages.getReadyMillis() / 1000.0 : -1).append('\n');
+
+        header(out, "simpleauth_handler_calls_total", "counter", "Event handler invocations");
+        for (Handler h : Handler.values()) {
+            out.append("simpleauth_handler_calls_total{handler=\"").append(h.name().toLowerCase()).append("\"} ")
+                    .append(HANDLER_CALLS[h.ordinal()].sum()).append('\n');
+        }
+
+        ExternalNotifier notifier = plugin.getNotifier();
+        header(out, "simpleauth_notifier_events_total", "counter", "Supervisor events by outcome");
+        out.append("simpleauth_notifier_events_total{outcome=\"sent\"} ").append(notifier.getSent()).append('\n');
+        out.append("simpleauth_notifier_events_total{outcome=\"coalesced\"} ").append(notifier.getCoalesced()).append('\n');
+        out.append("simpleauth_notifier_events_total{outcome=\"dropped\"} ").append(notifier.getDropped()).append('\n');
+        out.append("simpleauth_notifier_events_total{outcome=\"failed\"} ").append(notifier.getFailed()).append('\n');
+        header(out, "simpleauth_notifier_retries_total", "counter", "Supervisor request retries");
+        out.append("simpleauth_notifier_retries_total ").append(notifier.getRetries()).append('\n');
+        header(out, "simpleauth_notifier_queue_depth", "gauge", "Supervisor events waiting to be sent");
+        out.append("simpleauth_notifier_queue_depth ").append(notifier.getQueueDepth()).append('\n');
+
+        AccountStore accounts = plugin.getUserManager().getAccounts();
+        header(out, "simpleauth_account_cache_requests_total", "counter", "Account record lookups by result; misses are read from storage");
+        out.append("simpleauth_account_cache_requests_total{result=\"hit\"} ").append(accounts.getHits()).append('\n');
+        out.append("simpleauth_account_cache_requests_total{result=\"miss\"} ").append(accounts.getMisses()).append('\n');
+        header(out, "simpleauth_account_cache_evictions_total", "counter", "Account records dropped to stay within the budget");
+        out.append("simpleauth_account_cache_evictions_total ").append(accounts.getEvictions()).append('\n');
+        header(out, "simpleauth_account_cache_entries", "gauge", "Accounts in the credential index and with their full record loaded");
+        out.append("simpleauth_account_cache_entries{part=\"index\"} ").append(accounts.getAccountCount()).append('\n');
+        out.append("simpleauth_account_cache_entries{part=\"records\"} ").append(accounts.getLoadedCount()).append('\n');
+        header(out, "simpleauth_account_cache_bytes", "gauge", "Estimated resident bytes of account data, and the budget for loaded records");
+        out.append("simpleauth_account_cache_bytes{part=\"index\"} ").append(accounts.getIndexBytes()).append('\n');
+        out.append("simpleauth_account_cache_bytes{part=\"records\"} ").append(accounts.getProfileBytes()).append('\n');
+        out.append("simpleauth_account_cache_bytes{part=\"budget\"} ").append(accounts.getBudgetBytes()).append('\n');
+
+        SkinCache skins = plugin.getUserManager().getSkinCache();
+        header(out, "simpleauth_skin_cache_requests_total", "counter", "Skin cache lookups by cache and result");
+        out.append("simpleauth_skin_cache_requests_total{cache=\"skin\",result=\"hit\"} ").append(skins.getSkinHits()).append('\n');
+        out.append("simpleauth_skin_cache_requests_total{cache=\"skin\",result=\"miss\"} ").append(skins.getSkinMisses()).append('\n');
+        out.append("simpleauth_skin_cache_requests_total{cache=\"player\",result=\"hit\"} ").append(skins.getPlayerHits()).append('\n');
+        out.append("simpleauth_skin_cache_requests_total{cache=\"player\",result=\"miss\"} ").append(skins.getPlayerMisses()).append('\n');
+        header(out, "simpleauth_skin_cache_entries", "gauge", "Entries held by the skin cache");
+        out.append("simpleauth_skin_cache_entries{cache=\"skin\"} ").append(skins.getSkinCount()).append('\n');
+        out.append("simpleauth_skin_cache_entries{cache=\"player\"} ").append(skins.getPlayerCount()).append('\n');
+
+        ChunkPrefetcher prefetcher = plugin.getUserManager().getPrefetcher();
+        header(out, "simpleauth_chunk_prefetch_requests_total", "counter", "Login destination lookups: already loaded, still loading, or started");
+        out.append("simpleauth_chunk_prefetch_requests_total{result=\"warm\"} ").append(prefetcher.getWarm()).append('\n');
+        out.append("simpleauth_chunk_prefetch_requests_total{result=\"loading\"} ").append(prefetcher.getLoading()).append('\n');
+        out.append("simpleauth_chunk_prefetch_requests_total{result=\"cold\"} ").append(prefetcher.getCold()).append('\n');
+        header(out, "simpleauth_chunk_prefetch_destinations", "gauge", "Login destinations kept warm");
+        out.append("simpleauth_chunk_prefetch_destinations ").append(prefetcher.size()).append('\n');
+        header(out, "simpleauth_chunk_prefetch_chunks", "gauge", "Chunks held loaded for warm destinations");
+        out.append("simpleauth_chunk_prefetch_chunks ").append(prefetcher.getHeldChunks()).append('\n');
+
+        ClusterNode cluster = plugin.getUserManager().getCluster();
+        if (cluster.isEnabled()) {
+            header(out, "simpleauth_cluster_acquires_total", "counter", "Account lease requests made by this node");
+            out.append("simpleauth_cluster_acquires_total{result=\"granted\"} ").append(cluster.getGranted()).append('\n');
+            out.append("simpleauth_cluster_acquires_total{result=\"denied\"} ").append(cluster.getDenied()).append('\n');
+            header(out, "simpleauth_cluster_unreachable_total", "counter", "Lease requests a peer didn't answer in time");
+            out.append("simpleauth_cluster_unreachable_total ").append(cluster.getUnreachable()).append('\n');
+            header(out, "simpleauth_cluster_updates_total", "counter", "Account writes replicated between nodes");
+            out.append("simpleauth_cluster_updates_total{direction=\"sent\"} ").append(cluster.getUpdatesSent()).append('\n');
+            out.append("simpleauth_cluster_updates_total{direction=\"received\"} ").append(cluster.getUpdatesReceived()).append('\n');
+            header(out, "simpleauth_cluster_dropped_total", "counter", "Frames dropped because a peer's queue was full");
+            out.append("simpleauth_cluster_dropped_total ").append(cluster.getDropped()).append('\n');
+            header(out, "simpleauth_cluster_leases", "gauge", "Account leases known to this node");
+            out.append("simpleauth_cluster_leases{holder=\"local\"} ").append(cluster.getHeldCount()).append('\n');
+            out.append("simpleauth_cluster_leases{holder=\"remote\"} ").append(cluster.getRemoteCount()).append('\n');
+        }
+
+        var lanes = plugin.getExecutor().getLanes();
+        header(out, "simpleauth_executor_tasks_total", "counter", "Background tasks by lane and outcome");
+        for (BackgroundExecutor.Lane lane : lanes) {
+            String l = "simpleauth_executor_tasks_total{lane=\"" + lane.getName() + "\",outcome=\"";
+            out.append(l).append("completed\"} ").append(lane.getCompleted()).append('\n');
+            out.append(l).append("failed\"} ").append(lane.getFailed()).append('\n');
+            out.append(l).append("rejected\"} ").append(lane.getRejected()).append('\n');
+            out.append(l).append("caller_runs\"} ").append(lane.getCallerRuns()).append('\n');
+        }
+        header(out, "simpleauth_executor_queue_depth", "gauge", "Tasks waiting per lane");
+        for (BackgroundExecutor.Lane lane : lanes) {
+            out.append("simpleauth_executor_queue_depth{lane=\"").append(lane.getName()).append("\"} ").append(lane.getQueueDepth()).append('\n');
+        }
+        header(out, "simpleauth_executor_queue_capacity", "gauge", "Queue bound per lane");
+        for (BackgroundExecutor.Lane lane : lanes) {
+            out.append("simpleauth_executor_queue_capacity{lane=\"").append(lane.getName()).append("\"} ").append(lane.getCapacity()).append('\n');
+        }
+        header(out, "simpleauth_executor_active", "gauge", "Tasks running per lane");
+        for (BackgroundExecutor.Lane lane : lanes) {
+            out.append("simpleauth_executor_active{lane=\"").append(lane.getName()).append("\"} ").append(lane.getActive()).append('\n');
+        }
+
+        // so login latency can be read against its cost to the tick
+        header(out, "simpleauth_server_tick_seconds", "gauge", "Average server tick time (MSPT) over the last 100 ticks");
+        out.append("simpleauth_server_tick_seconds ").append(plugin.getServer().getAverageTickTime() / 1000.0).append('\n');
+
+        header(out, "simpleauth_players_online", "gauge", "Connected players");
+        out.append("simpleauth_players_online ").append(plugin.getPresence().getOnlineCount()).append('\n');
+        header(out, "simpleauth_players_authenticated", "gauge", "Players logged into an account");
+        out.append("simpleauth_players_authenticated ").append(plugin.getUserManager().getAuthenticatedCount()).append('\n');
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
@@ -0,0 +1,294 @@
+package com.simpleauth;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+// Memory-mapped segment holding supervisor events until they are acknowledged.
+//   header: magic, version, reserved, write position
+//   record: [length][crc32][state][seq][key][path][body], state 0 = pending, 1 = acknowledged
+// Each record carries its own ack flag (outside the crc, flipped in place), so acks may come in
+// any order and an event that is never acknowledged holds back nothing but itself.
+// Appends are memory copies; force() pays for one fsync per notifier batch. Every pending record
+// is replayed at startup, so delivery is at-least-once. Acknowledged records are compacted away on
+// the compactor (the supervisor lane), never on the thread that appends.
+public class NotifierOutbox {
+    private static final int MAGIC = 0x5341_4F42; // "SAOB"
+    private static final int VERSION = 2;
+    private static final int HEADER = 32;
+    private static final int LEGACY_ACK_OFFSET = 8; // version 1: lowest unacknowledged seq
+    private static final int WRITE_OFFSET = 16;
+    private static final int STATE_PENDING = 0;
+    private static final int STATE_ACKED = 1;
+
+    private final Plugin plugin;
+    private final Path path;
+    private final int size;
+    private final Executor compactor;
+
+    private MappedByteBuffer buf;
+    private long nextSeq = 1;
+    private boolean dirty;
+    private boolean compactScheduled;
+    private long liveBytes;
+    private final TreeMap<Long, Live> live = new TreeMap<>(); // unacknowledged records
+
+    private static final class Live {
+        final byte[] record;
+        int pos; // where it sits in the current segment
+
+        Live(byte[] record, int pos) {
+            this.record = record;
+            this.pos = pos;
+        }
+    }
+
+    public record Stored(long seq, String key, String path, String body) {}
+
+    public NotifierOutbox(Plugin plugin, File file, int sizeBytes, Executor compactor) {
+        this.plugin = plugin;
+        this.path = file.toPath();
+        this.size = sizeBytes;
+        this.compactor = compactor;
+    }
+
+    // Maps the file and returns the events that were never acknowledged, oldest first
+    public List<Stored> open() throws IOException {
+        List<Stored> pending;
+        synchronized (this) {
+            Files.createDirectories(path.getParent());
+            pending = Files.exists(path) ? readExisting() : List.of();
+        }
+        // always continue from a compacted segment of the configured size
+        compact();
+        return pending;
+    }
+
+    // Returns the record's seq, or -1 if the segment is full (compaction is then started for later appends)
+    public synchronized long append(String key, String path, String body) {
+        if (buf == null) return -1; // failed to open
+        long seq = nextSeq;
+        byte[] record = encode(seq, key, path, body);
+        int pos = buf.getInt(WRITE_OFFSET);
+        if (pos + record.length > size) {
+            scheduleCompaction();
+            return -1;
+        }
+
+        buf.put(pos, record);
+        buf.putInt(WRITE_OFFSET, pos + record.length);
+        live.put(seq, new Live(record, pos));
+        liveBytes += record.length;
+        nextSeq++;
+        dirty = true;
+        // a quarter of the segment is acknowledged garbage: reclaim it before appends start failing
+        int used = pos + record.length - HEADER;
+        if (used > size * 3L / 4 && used - liveBytes > size / 4) scheduleCompaction();
+        return seq;
+    }
+
+    public synchronized void ack(long seq) {
+        if (buf == null || seq < 0) return;
+        Live l = live.remove(seq);
+        if (l == null) return;
+        buf.putInt(l.pos + 8, STATE_ACKED);
+        liveBytes -= l.record.length;
+        dirty = true;
+    }
+
+    // One fsync for everything appended or acknowledged since the last call
+    public synchronized void force() {
+        if (buf == null || !dirty) return;
+        buf.force();
+        dirty = false;
+    }
+
+    public synchronized int getPendingCount() {
+        return live.size();
+    }
+
+    public synchronized int getUsedBytes() {
+        return buf == null ? 0 : buf.getInt(WRITE_OFFSET);
+    }
+
+    private void scheduleCompaction() {
+        if (compactScheduled) return;
+        compactScheduled = true;
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    plugin.getLogger().warning("Failed to compact outbox: " + e.getMessage());
+                } finally {
+                    synchronized (this) {
+                        compactScheduled = false;
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compactScheduled = false; // shutting down; the next start compacts
+        }
+    }
+
+    private List<Stored> readExisting() throws IOException {
+        List<Stored> out = new ArrayList<>();
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (in.remaining() < HEADER || in.getInt(0) != MAGIC) return out;
+        int version = in.getInt(4);
+        if (version != 1 && version != VERSION) return out;
+
+        // version 1 had a single ack cursor and no per-record state
+        long ackSeq = version == 1 ? in.getLong(LEGACY_ACK_OFFSET) : 0;
+        int recordHeader = version == 1 ? 8 : 12;
+        int end = Math.min(in.getInt(WRITE_OFFSET), in.capacity());
+        int pos = HEADER;
+        CRC32 crc = new CRC32();
+        while (pos + recordHeader <= end) {
+            int length = in.getInt(pos);
+            if (length <= 0 || pos + recordHeader + length > end) break;
+            byte[] payload = new byte[length];
+            in.get(pos + recordHeader, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != in.getInt(pos + 4)) break;
+
+            ByteBuffer p = ByteBuffer.wrap(payload);
+            long seq = p.getLong();
+            nextSeq = Math.max(nextSeq, seq + 1);
+            boolean pending = version == 1 ? seq >= ackSeq : in.getInt(pos + 8) == STATE_PENDING;
+            if (pending) {
+                Stored s = new Stored(seq, readString(p), readString(p), readString(p));
+                out.add(s);
+                byte[] record = encode(seq, s.key(), s.path(), s.body());
+                live.put(seq, new Live(record, -1)); // placed by the compaction that follows
+                liveBytes += record.length;
+            }
+            pos += recordHeader + length;
+        }
+        return out;
+    }
+
+    private void map(Path file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(size);
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // Writes the pending records to a fresh segment and swaps it in. The segment is built and
+    // fsynced without holding the lock; records acknowledged or appended meanwhile are applied
+    // to the new segment afterwards.
+    private void compact() throws IOException {
+        TreeMap<Long, byte[]> snapshot = new TreeMap<>();
+        long snapshotNext;
+        synchronized (this) {
+            for (Map.Entry<Long, Live> e : live.entrySet()) snapshot.put(e.getKey(), e.getValue().record);
+            snapshotNext = nextSeq;
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).putLong(0).putInt(HEADER);
+        out.position(HEADER);
+        Map<Long, Integer> placed = new TreeMap<>();
+        for (Map.Entry<Long, byte[]> e : snapshot.entrySet()) {
+            if (out.remaining() < e.getValue().length) {
+                plugin.getLogger().warning("Outbox full, dropping undelivered event #" + e.getKey());
+                continue;
+            }
+            placed.put(e.getKey(), out.position());
+            out.put(e.getValue());
+        }
+        out.putInt(WRITE_OFFSET, out.position());
+        out.flip();
+
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(true);
+        }
+
+        synchronized (this) {
+            try {
+                Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            map(path);
+
+            TreeMap<Long, Live> kept = new TreeMap<>();
+            long keptBytes = 0;
+            for (Map.Entry<Long, Integer> e : placed.entrySet()) {
+                Live l = live.get(e.getKey());
+                if (l == null) {
+                    buf.putInt(e.getValue() + 8, STATE_ACKED); // acknowledged while the segment was written
+                    continue;
+                }
+                l.pos = e.getValue();
+                kept.put(e.getKey(), l);
+                keptBytes += l.record.length;
+            }
+            // appended while the segment was written: they were durable in the old file, make them so here
+            int pos = buf.getInt(WRITE_OFFSET);
+            for (Map.Entry<Long, Live> e : live.tailMap(snapshotNext).entrySet()) {
+                Live l = e.getValue();
+                if (pos + l.record.length > size) {
+                    plugin.getLogger().warning("Outbox full, dropping undelivered event #" + e.getKey());
+                    continue;
+                }
+                buf.put(pos, l.record);
+                l.pos = pos;
+                pos += l.record.length;
+                kept.put(e.getKey(), l);
+                keptBytes += l.record.length;
+            }
+            buf.putInt(WRITE_OFFSET, pos);
+            buf.force();
+            live.clear();
+            live.putAll(kept);
+            liveBytes = keptBytes;
+            dirty = false;
+        }
+    }
+
+    private static byte[] encode(long seq, String key, String path, String body) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        byte[] p = path.getBytes(StandardCharsets.UTF_8);
+        byte[] b = body.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(8 + 12 + k.length + p.length + b.length);
+        payload.putLong(seq)
+                .putInt(k.length).put(k)
+                .putInt(p.length).put(p)
+                .putInt(b.length).put(b);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        ByteBuffer record = ByteBuffer.allocate(12 + payload.capacity());
+        record.putInt(payload.capacity()).putInt((int) crc.getValue()).putInt(STATE_PENDING).put(payload.array());
+        return record.array();
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] b = new byte[in.getInt()];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
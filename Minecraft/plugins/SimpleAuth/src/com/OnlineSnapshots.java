@@ -0,0 +1,80 @@
+package com.simpleauth;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// Immutable, versioned /online payloads. The main thread builds one whenever presence or a
+// login changes; HTTP threads only ever read the latest and never touch game state.
+public class OnlineSnapshots {
+    private final SimpleAuth plugin;
+    private final Queue<CompletableFuture<Snapshot>> waiters = new ConcurrentLinkedQueue<>();
+    private volatile Snapshot current;
+
+    public record Snapshot(long version, byte[] body, String etag) {}
+
+    public OnlineSnapshots(SimpleAuth plugin) {
+        this.plugin = plugin;
+        // nobody is tracked yet, but the payload has the same shape as every later one
+        this.current = new Snapshot(0, buildBody(List.of(), uuid -> null, Bukkit.getPort()), "\"0\"");
+    }
+
+    // Main thread only
+    public void publish() {
+        UserManager users = plugin.getUserManager();
+        byte[] body = buildBody(plugin.getPresence().entries(), users::getAuthUserFromID, Bukkit.getPort());
+
+        long version = current.version() + 1;
+        Snapshot next = new Snapshot(version, body, "\"" + version + "\"");
+        current = next;
+
+        CompletableFuture<Snapshot> w;
+        while ((w = waiters.poll()) != null) w.complete(next);
+    }
+
+    static byte[] buildBody(Iterable<Map.Entry<UUID, PresenceTracker.Presence>> online,
+                            Function<UUID, String> authUsers, int port) {
+        JsonObject result = new JsonObject();
+        JsonArray arr = new JsonArray();
+        for (Map.Entry<UUID, PresenceTracker.Presence> e : online) {
+            JsonObject o = new JsonObject();
+            String authUser = authUsers.apply(e.getKey());
+            o.addProperty("name", authUser != null ? authUser : "Not-Logged");
+            o.addProperty("ip", e.getValue().ip());
+            arr.add(o);
+        }
+        result.add("players", arr);
+        result.addProperty("port", port); // 👈 add actual MC server port
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    // Completes with the first snapshot newer than sinceVersion, or the current one after the timeout
+    public CompletableFuture<Snapshot> awaitNewer(long sinceVersion, long timeoutMillis) {
+        Snapshot snap = current;
+        if (snap.version() > sinceVersion) return CompletableFuture.completedFuture(snap);
+
+        CompletableFuture<Snapshot> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // a publish may have slipped in between the check and the add
+        if (current.version() > sinceVersion) waiter.complete(current);
+        return waiter.completeOnTimeout(null, timeoutMillis, TimeUnit.MILLISECONDS)
+                .thenApply(s -> {
+                    waiters.remove(waiter);
+                    return s != null ? s : current;
+                });
+    }
+}
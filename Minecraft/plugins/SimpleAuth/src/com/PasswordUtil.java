@@ -1,19 +1,81 @@
 package com.simpleauth;
 
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HexFormat;
 
 public class PasswordUtil {
+    // Stored as pbkdf2-sha256$<iterations>$<salt>$<hash>, salt and hash Base64 encoded
+    private static final String PBKDF2_PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    public static String encode(String password, int iterations) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        byte[] key = pbkdf2(password, salt, iterations);
+        return PBKDF2_PREFIX + iterations + "$"
+                + Base64.getEncoder().encodeToString(salt) + "$"
+                + Base64.getEncoder().encodeToString(key);
+    }
+
+    // legacySalt is only used for hashes created before the PBKDF2 format
+    public static boolean verify(String password, String stored, String legacySalt) {
+        if (!stored.startsWith(PBKDF2_PREFIX)) {
+            if (legacySalt == null) return false;
+            return MessageDigest.isEqual(
+                    stored.getBytes(StandardCharsets.US_ASCII),
+                    hash(password, legacySalt).getBytes(StandardCharsets.US_ASCII));
+        }
+
+        String[] parts = stored.substring(PBKDF2_PREFIX.length()).split("\\$");
+        if (parts.length != 3) return false;
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            byte[] salt = Base64.getDecoder().decode(parts[1]);
+            byte[] expected = Base64.getDecoder().decode(parts[2]);
+            return iterations > 0 && MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException e) {
+            return false; // malformed hash, also covers NumberFormatException
+        }
+    }
+
+    // True for legacy SHA-256 hashes and for PBKDF2 hashes weaker than the configured cost
+    public static boolean needsRehash(String stored, int iterations) {
+        if (!stored.startsWith(PBKDF2_PREFIX)) return true;
+        int end = stored.indexOf('$', PBKDF2_PREFIX.length());
+        if (end < 0) return true;
+        try {
+            return Integer.parseInt(stored.substring(PBKDF2_PREFIX.length(), end)) < iterations;
+        } catch (NumberFormatException e) {
+            return true; // malformed: replace it with a proper hash
+        }
+    }
+
+    // Legacy single-round salted SHA-256
     public static String hash(String password, String salt) {
         try {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
             byte[] hash = digest.digest((salt + password).getBytes(StandardCharsets.UTF_8));
-            StringBuilder hex = new StringBuilder();
-            for (byte b : hash)
-                hex.append(String.format("%02x", b));
-            return hex.toString();
+            return HexFormat.of().formatHex(hash);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            spec.clearPassword();
         }
     }
-}
\ No newline at end of file
+}
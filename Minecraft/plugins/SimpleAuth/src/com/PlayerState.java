@@ -0,0 +1,173 @@
+package com.simpleauth;
+
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Everything restored on login, stored as one versioned binary record:
+//   magic, version, flags
+//   location (world, x, y, z, yaw, pitch) and skin url, always uncompressed so they can be peeked
+//   inventory section length + slots (see InventoryUtils.writeContents), deflated if FLAG_DEFLATE
+public record PlayerState(ItemStack[] inventory, String world, double x, double y, double z,
+                          float yaw, float pitch, String skinUrl) {
+    private static final byte MAGIC = (byte) 0xA5;
+    private static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATE = 1;
+
+    public static PlayerState capture(Player p, String skinUrl) {
+        Location loc = p.getLocation();
+        return new PlayerState(p.getInventory().getContents(), loc.getWorld().getName(),
+                loc.getX(), loc.getY(), loc.getZ(), loc.getYaw(), loc.getPitch(), skinUrl);
+    }
+
+    // Detached from the live inventory, for keeping the state after the player is gone
+    public PlayerState copy() {
+        ItemStack[] items = null;
+        if (inventory != null) {
+            items = new ItemStack[inventory.length];
+            for (int i = 0; i < items.length; i++) items[i] = inventory[i] == null ? null : inventory[i].clone();
+        }
+        return new PlayerState(items, world, x, y, z, yaw, pitch, skinUrl);
+    }
+
+    // Null if the saved world is gone (or no location was ever saved)
+    public Location toLocation(Server server) {
+        if (world == null) return null;
+        World w = server.getWorld(world);
+        return w == null ? null : new Location(w, x, y, z, yaw, pitch);
+    }
+
+    public byte[] encode(boolean compress) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(compress ? FLAG_DEFLATE : 0);
+
+            out.writeBoolean(world != null);
+            if (world != null) {
+                out.writeUTF(world);
+                out.writeDouble(x);
+                out.writeDouble(y);
+                out.writeDouble(z);
+                out.writeFloat(yaw);
+                out.writeFloat(pitch);
+            }
+            out.writeBoolean(skinUrl != null);
+            if (skinUrl != null) out.writeUTF(skinUrl);
+
+            byte[] section = encodeInventory(compress);
+            out.writeInt(section.length);
+            out.write(section);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private byte[] encodeInventory(boolean compress) throws IOException {
+        if (inventory == null) return new byte[0];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        Deflater deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+        try (DataOutputStream out = new DataOutputStream(compress ? new DeflaterOutputStream(bytes, deflater) : bytes)) {
+            InventoryUtils.writeContents(out, inventory);
+        } finally {
+            if (deflater != null) deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static PlayerState decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        boolean compressed = readHeader(in);
+
+        String world = null;
+        double x = 0, y = 0, z = 0;
+        float yaw = 0, pitch = 0;
+        if (in.readBoolean()) {
+            world = in.readUTF();
+            x = in.readDouble();
+            y = in.readDouble();
+            z = in.readDouble();
+            yaw = in.readFloat();
+            pitch = in.readFloat();
+        }
+        String skinUrl = in.readBoolean() ? in.readUTF() : null;
+
+        ItemStack[] inventory = null;
+        int length = in.readInt();
+        if (length > 0) {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            InputStream section = new ByteArrayInputStream(bytes);
+            if (compressed) section = new InflaterInputStream(section);
+            inventory = InventoryUtils.readContents(new DataInputStream(new BufferedInputStream(section)));
+        }
+        return new PlayerState(inventory, world, x, y, z, yaw, pitch, skinUrl);
+    }
+
+    // Reads only the uncompressed header, so callers can get the skin without decoding items
+    public static String peekSkinUrl(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        readHeader(in);
+        if (in.readBoolean()) {
+            in.readUTF();
+            in.skipNBytes(8 * 3 + 4 * 2);
+        }
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Saved location from the header only, so chunks can be loaded while the items are still being decoded
+    public static Location peekLocation(byte[] record, Server server) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        readHeader(in);
+        if (!in.readBoolean()) return null;
+        World w = server.getWorld(in.readUTF());
+        if (w == null) return null;
+        return new Location(w, in.readDouble(), in.readDouble(), in.readDouble(), in.readFloat(), in.readFloat());
+    }
+
+    // Accounts saved before this format: Base64 Java-serialized inventory and "world;x;y;z"
+    public static PlayerState fromLegacy(String inventoryBase64, String location, String skinUrl) {
+        ItemStack[] inventory = inventoryBase64 == null ? null : InventoryUtils.fromBase64(inventoryBase64);
+        if (location == null) return new PlayerState(inventory, null, 0, 0, 0, 0, 0, skinUrl);
+
+        String[] p = location.split(";");
+        return new PlayerState(inventory, p[0],
+                Double.parseDouble(p[1]), Double.parseDouble(p[2]), Double.parseDouble(p[3]),
+                0, 0, skinUrl);
+    }
+
+    // Cheap content hash (no serialization) so autosave can tell whether anything changed since the
+    // last write. Items hash by type, amount and meta; a collision only delays a save to the next full pass.
+    public long fingerprint() {
+        long h = 17;
+        h = 31 * h + (world == null ? 0 : world.hashCode());
+        h = 31 * h + Double.doubleToLongBits(x);
+        h = 31 * h + Double.doubleToLongBits(y);
+        h = 31 * h + Double.doubleToLongBits(z);
+        h = 31 * h + Float.floatToIntBits(yaw);
+        h = 31 * h + Float.floatToIntBits(pitch);
+        h = 31 * h + (skinUrl == null ? 0 : skinUrl.hashCode());
+        if (inventory != null) {
+            for (ItemStack item : inventory) h = 31 * h + (item == null ? 0 : item.hashCode());
+        }
+        return h;
+    }
+
+    private static boolean readHeader(DataInputStream in) throws IOException {
+        if (in.readByte() != MAGIC) throw new IOException("Not a player state record");
+        byte version = in.readByte();
+        if (version != VERSION) throw new IOException("Unknown player state version " + version);
+        return (in.readByte() & FLAG_DEFLATE) != 0;
+    }
+}
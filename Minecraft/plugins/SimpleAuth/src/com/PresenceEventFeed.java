@@ -0,0 +1,151 @@
+package com.simpleauth;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Server-Sent Events stream of connect/login/logout/disconnect. Recent events are kept in a
+// small history so a client can resume with Last-Event-ID (or ?since=). Every subscriber gets
+// a bounded queue drained by its own virtual thread; one that falls behind is disconnected
+// instead of slowing the main thread or the API executor.
+public class PresenceEventFeed {
+    private static final int HISTORY = 1024;
+    private static final int SUBSCRIBER_BUFFER = 256;
+    private static final int MAX_SUBSCRIBERS = 32;
+    private static final long HEARTBEAT_SECONDS = 15;
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Plugin plugin;
+    private final ArrayDeque<Event> history = new ArrayDeque<>(); // guarded by this
+    private final Set<Subscriber> subscribers = new CopyOnWriteArraySet<>();
+    private long lastId;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder droppedSubscribers = new LongAdder();
+
+    private record Event(long id, byte[] frame) {}
+
+    private class Subscriber {
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SUBSCRIBER_BUFFER);
+        final HttpExchange exchange;
+        volatile boolean closed;
+
+        Subscriber(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        void run() {
+            try (OutputStream os = exchange.getResponseBody()) {
+                while (!closed) {
+                    byte[] frame = queue.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    os.write(frame != null ? frame : HEARTBEAT);
+                    // write whatever else is already queued before flushing
+                    while ((frame = queue.poll()) != null) os.write(frame);
+                    os.flush();
+                }
+            } catch (IOException | InterruptedException ignored) {
+                // client went away
+            } finally {
+                closed = true;
+                subscribers.remove(this);
+                exchange.close();
+            }
+        }
+    }
+
+    public PresenceEventFeed(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    // Main thread. user is the logged-in account, if any
+    public void publish(String type, UUID uuid, String player, String user, String ip) {
+        JsonObject data = new JsonObject();
+        data.addProperty("type", type);
+        data.addProperty("uuid", uuid.toString());
+        if (player != null) data.addProperty("player", player);
+        if (user != null) data.addProperty("user", user);
+        if (ip != null) data.addProperty("ip", ip);
+        data.addProperty("time", System.currentTimeMillis());
+
+        synchronized (this) {
+            long id = ++lastId;
+            Event e = new Event(id, frame(id, type, data.toString()));
+            history.addLast(e);
+            if (history.size() > HISTORY) history.removeFirst();
+
+            for (Subscriber s : subscribers) {
+                if (!s.queue.offer(e.frame())) {
+                    droppedSubscribers.increment();
+                    // slow consumer: its thread may be stuck in a write to a stalled socket, closing
+                    // the exchange unblocks it. Closed off the main thread, as closing writes too.
+                    s.closed = true;
+                    subscribers.remove(s);
+                    Thread.ofVirtual().name("SimpleAuth-SSE-Close").start(s.exchange::close);
+                    plugin.getLogger().info("Dropped a slow /events subscriber");
+                }
+            }
+        }
+        published.increment();
+    }
+
+    // Called on the API executor; the stream itself is written from a virtual thread
+    public void subscribe(HttpExchange ex, long sinceId) throws IOException {
+        if (subscribers.size() >= MAX_SUBSCRIBERS) {
+            ex.sendResponseHeaders(503, -1);
+            ex.close();
+            return;
+        }
+
+        ex.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        ex.getResponseHeaders().add("Cache-Control", "no-cache");
+        ex.sendResponseHeaders(200, 0);
+
+        Subscriber s = new Subscriber(ex);
+        synchronized (this) {
+            if (sinceId >= 0) {
+                Event oldest = history.peekFirst();
+                if (sinceId > lastId) {
+                    // ids from before a restart: they start again from 1, so all of ours are new to the client
+                    s.queue.offer(frame(lastId, "reset", "{}"));
+                    sinceId = 0;
+                } else if (oldest != null && oldest.id() > sinceId + 1) {
+                    // gap: the client missed events we no longer have, it should refetch /online
+                    s.queue.offer(frame(lastId, "reset", "{}"));
+                }
+                for (Event e : history) {
+                    if (e.id() > sinceId && !s.queue.offer(e.frame())) break;
+                }
+            }
+            subscribers.add(s);
+        }
+        Thread.ofVirtual().name("SimpleAuth-SSE").start(s::run);
+    }
+
+    public void close() {
+        for (Subscriber s : subscribers) {
+            s.closed = true;
+            s.exchange.close();
+        }
+        subscribers.clear();
+    }
+
+    private static byte[] frame(long id, String type, String json) {
+        return ("id: " + id + "\nevent: " + type + "\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int getSubscriberCount() { return subscribers.size(); }
+    public long getPublished() { return published.sum(); }
+    public long getDroppedSubscribers() { return droppedSubscribers.sum(); }
+}
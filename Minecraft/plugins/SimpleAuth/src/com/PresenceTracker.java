@@ -0,0 +1,82 @@
+package com.simpleauth;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Who is connected and from where, driven by join/quit/kick events.
+// reconcile() is only a safety net for events we somehow missed.
+public class PresenceTracker {
+    private final SimpleAuth plugin;
+    private final Map<UUID, Presence> online = new ConcurrentHashMap<>();
+
+    private final LongAdder eventDisconnects = new LongAdder();
+    private final LongAdder sweepConnects = new LongAdder();
+    private final LongAdder sweepDisconnects = new LongAdder();
+
+    public record Presence(String name, String ip, long connectedAt) {}
+
+    public PresenceTracker(SimpleAuth plugin) {
+        this.plugin = plugin;
+    }
+
+    public void onConnect(Player p) {
+        var addr = p.getAddress();
+        if (addr == null) return;
+        String ip = addr.getAddress().getHostAddress();
+        if (online.putIfAbsent(p.getUniqueId(), new Presence(p.getName(), ip, System.currentTimeMillis())) == null) {
+            plugin.onPlayerConnected(p.getUniqueId(), ip);
+        }
+    }
+
+    public void onDisconnect(UUID id) {
+        Presence presence = online.remove(id);
+        if (presence == null) return; // kick is followed by quit
+        eventDisconnects.increment();
+        disconnected(id, presence);
+    }
+
+    public void reconcile() {
+        Set<UUID> seen = new HashSet<>();
+        for (Player p : Bukkit.getOnlinePlayers()) {
+            seen.add(p.getUniqueId());
+            if (!online.containsKey(p.getUniqueId())) {
+                sweepConnects.increment();
+                onConnect(p);
+            }
+        }
+        for (UUID id : online.keySet()) {
+            if (seen.contains(id)) continue;
+            Presence presence = online.remove(id);
+            if (presence == null) continue;
+            sweepDisconnects.increment();
+            plugin.getLogger().warning("Missed disconnect event for " + id + ", caught by reconciliation");
+            disconnected(id, presence);
+        }
+    }
+
+    private void disconnected(UUID id, Presence presence) {
+        String authUser = plugin.getUserManager().getAuthUserFromID(id);
+        plugin.onPlayerDisconnected(id, presence.ip(), authUser);
+    }
+
+    public String getIp(UUID id) {
+        Presence presence = online.get(id);
+        return presence == null ? null : presence.ip();
+    }
+
+    public Iterable<Map.Entry<UUID, Presence>> entries() {
+        return online.entrySet();
+    }
+
+    public int getOnlineCount() { return online.size(); }
+    public long getEventDisconnects() { return eventDisconnects.sum(); }
+    public long getSweepConnects() { return sweepConnects.sum(); }
+    public long getSweepDisconnects() { return sweepDisconnects.sum(); }
+}
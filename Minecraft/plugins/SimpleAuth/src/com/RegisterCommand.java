@@ -1,5 +1,6 @@
 package com.simpleauth;
 
+import org.bukkit.Bukkit;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -48,8 +49,11 @@ public class RegisterCommand implements CommandExecutor {
             return true;
         }
 
-        plugin.getUserManager().createUser(user, pass);
-        p.sendMessage("§aUser created successfully!");
+        plugin.getUserManager().createUser(user, pass).whenComplete((v, err) ->
+                Bukkit.getScheduler().runTask(plugin, () -> {
+                    if (err != null) p.sendMessage("§cFailed to create user, please try again.");
+                    else p.sendMessage("§aUser created successfully!");
+                }));
         return true;
     }
 }
\ No newline at end of file
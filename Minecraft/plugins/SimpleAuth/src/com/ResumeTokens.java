@@ -0,0 +1,84 @@
+package com.simpleauth;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Short-lived sessions left behind when a logged-in player drops, so a reconnect from the same
+// UUID and IP within the TTL is logged straight back in: no /login, no password hash, and the state
+// captured on quit is applied as is instead of being decoded again.
+// Tokens are single use and dropped as soon as the account is bound to any other session.
+public class ResumeTokens {
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxEntries;
+
+    // insertion order == expiry order, since every token gets the same TTL
+    private final LinkedHashMap<Key, Token> tokens = new LinkedHashMap<>();
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder claimed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+
+    private record Key(UUID player, String ip) {}
+
+    public record Token(String account, PlayerState state, long expiresAt) {}
+
+    public ResumeTokens(ConfigurationSection config) {
+        this.enabled = config == null || config.getBoolean("enabled", true);
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config == null ? 60 : config.getLong("ttlSeconds", 60));
+        this.maxEntries = config == null ? 1000 : config.getInt("maxEntries", 1000);
+    }
+
+    // state may be null, the resumed player is then restored from storage like a normal login
+    public synchronized void issue(UUID player, String ip, String account, PlayerState state) {
+        if (!enabled || ip == null) return;
+        long now = System.nanoTime();
+        Key key = new Key(player, ip);
+        tokens.remove(key); // re-insert at the tail
+        tokens.put(key, new Token(account, state, now + ttlNanos));
+        issued.increment();
+        expire(now);
+        Iterator<Token> it = tokens.values().iterator();
+        while (tokens.size() > maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            expired.increment();
+        }
+    }
+
+    // Removes and returns the token if it is still valid
+    public synchronized Token claim(UUID player, String ip) {
+        if (tokens.isEmpty() || ip == null) return null;
+        expire(System.nanoTime());
+        Token token = tokens.remove(new Key(player, ip));
+        if (token != null) claimed.increment();
+        return token;
+    }
+
+    // The account was logged into from somewhere else, its saved state may change from now on
+    public synchronized void revoke(String account) {
+        if (tokens.isEmpty()) return;
+        tokens.values().removeIf(t -> t.account().equals(account));
+    }
+
+    private void expire(long now) {
+        Iterator<Token> it = tokens.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAt() - now > 0) break;
+            it.remove();
+            expired.increment();
+        }
+    }
+
+    public synchronized int size() { return tokens.size(); }
+
+    public long getIssued() { return issued.sum(); }
+    public long getClaimed() { return claimed.sum(); }
+    public long getExpired() { return expired.sum(); }
+}
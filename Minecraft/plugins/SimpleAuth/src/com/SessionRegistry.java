@@ -0,0 +1,64 @@
+package com.simpleauth;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Logged-in sessions, indexed by player and by account. Both indexes hold the same immutable
+// Session, so a lookup from either side is one map read and never sees a half-written entry.
+// Writers are serialized (they only run on the main thread anyway); readers never lock.
+// An account is claimed before the player index is updated and released after it, so
+// isActive() never misses an account whose session is still visible by player.
+public class SessionRegistry {
+    public record Session(UUID player, String account, String ip, long loginTime) {}
+
+    private final Map<UUID, Session> byPlayer = new ConcurrentHashMap<>();
+    private final Map<String, Session> byAccount = new ConcurrentHashMap<>();
+
+    // False if the account is already held by another session
+    public synchronized boolean bind(UUID player, String account, String ip) {
+        Session session = new Session(player, account, ip, System.currentTimeMillis());
+        if (byAccount.putIfAbsent(account, session) != null) return false;
+        Session previous = byPlayer.put(player, session);
+        if (previous != null) byAccount.remove(previous.account(), previous);
+        return true;
+    }
+
+    // Returns the session that was removed, if any
+    public synchronized Session unbind(UUID player) {
+        Session session = byPlayer.remove(player);
+        if (session != null) byAccount.remove(session.account(), session);
+        return session;
+    }
+
+    public Session get(UUID player) {
+        return byPlayer.get(player);
+    }
+
+    public Session getByAccount(String account) {
+        return byAccount.get(account);
+    }
+
+    public String getAccount(UUID player) {
+        Session session = byPlayer.get(player);
+        return session == null ? null : session.account();
+    }
+
+    public boolean isActive(String account) {
+        return byAccount.containsKey(account);
+    }
+
+    public boolean contains(UUID player) {
+        return byPlayer.containsKey(player);
+    }
+
+    public int size() {
+        return byPlayer.size();
+    }
+
+    public Collection<Session> all() {
+        return Collections.unmodifiableCollection(byPlayer.values());
+    }
+}
@@ -4,65 +4,149 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.net.InetSocketAddress;
-import java.net.URI;
-import java.net.http.*;
-import java.time.Duration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
-import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.io.File;
 
 public class SimpleAuth extends JavaPlugin {
 
     private static SimpleAuth instance;
     private UserManager userManager;
+    private LoginRateLimiter rateLimiter;
+    private AdmissionCache admission;
+    private PresenceTracker presence;
+    private ExternalNotifier notifier;
+    private OnlineSnapshots snapshots;
+    private PresenceEventFeed events;
+    private BackgroundExecutor executor;
+    private volatile LocalApiServer api; // bound on the startup lane
+    private Limbo limbo;
+    private StartupStages stages;
 
     private static final String SUPERVISOR_URL = "http://127.0.0.1:5001";
-    // Shared HttpClient
-    private final HttpClient httpClient = HttpClient.newBuilder()
-            .version(HttpClient.Version.HTTP_1_1)
-            .connectTimeout(Duration.ofSeconds(3))
-            .build();
 
-    // Map to track currently connected players and their IPs
-    private final Map<UUID, String> onlinePlayerIps = new HashMap<>();
-
-    // Poll interval in ticks (20 ticks = 1 second)
-    private static final long POLL_INTERVAL = 100L; // 5 seconds
+    // Presence is event driven, this sweep only catches missed events (20 ticks = 1 second)
+    private static final long RECONCILE_INTERVAL = 1200L; // 60 seconds
 
     @Override
     public void onEnable() {
         instance = this;
         saveDefaultConfig();
-
+        stages = new StartupStages(getLogger());
+
+        // Lanes are drained in this order on shutdown: request-driven work first, persistence last
+        executor = new BackgroundExecutor(this);
+        executor.lane("startup", 4, 8, BackgroundExecutor.Overflow.CALLER_RUNS);
+        executor.lane("http", getConfig().getInt("executor.httpThreads", 4), 64, BackgroundExecutor.Overflow.CALLER_RUNS);
+        executor.lane("hash", getConfig().getInt("security.hashThreads", 2), 64, BackgroundExecutor.Overflow.REJECT);
+        executor.lane("restore", 2, 64, BackgroundExecutor.Overflow.REJECT);
+        executor.lane("skin", 2, 64, BackgroundExecutor.Overflow.REJECT);
+        executor.lane("maintenance", 1, 16, BackgroundExecutor.Overflow.REJECT);
+        // at most one drain plus one response or retry per queued event, so this lane never fills up
+        executor.lane("supervisor", 1, getConfig().getInt("supervisor.queueCapacity", 1024) * 2 + 16, BackgroundExecutor.Overflow.REJECT);
+        executor.lane("persistence", 1, 256, BackgroundExecutor.Overflow.REJECT);
+
+        // Everything is constructed up front without I/O, so the API can serve as soon as it is bound
+        limbo = new Limbo(this, getConfig().getConfigurationSection("limbo"));
         userManager = new UserManager(this);
+        rateLimiter = new LoginRateLimiter(getConfig().getConfigurationSection("rateLimit"));
+        admission = new AdmissionCache(getConfig().getConfigurationSection("admission"));
+        presence = new PresenceTracker(this);
+        snapshots = new OnlineSnapshots(this);
+        events = new PresenceEventFeed(this);
+        notifier = new ExternalNotifier(this, executor.get("supervisor"),
+                getConfig().getString("supervisor.url", SUPERVISOR_URL),
+                getConfig().getInt("supervisor.retries", 3),
+                getConfig().getInt("supervisor.timeoutSeconds", 5),
+                getConfig().getInt("supervisor.queueCapacity", 1024),
+                new NotifierOutbox(this, new File(getDataFolder(), "outbox.dat"),
+                        getConfig().getInt("supervisor.outboxSizeKb", 1024) * 1024, executor.get("supervisor")));
+
+        // Independent I/O runs in parallel while the main thread does the world and registrations
+        BackgroundExecutor.Lane startup = executor.get("startup");
+        CompletableFuture<Void> io = CompletableFuture.allOf(
+                stages.background("accounts", startup, userManager::loadAccounts),
+                stages.background("skins", startup, userManager::loadSkins),
+                stages.background("notifier", startup, notifier::start),
+                stages.background("api", startup, () -> {
+                    LocalApiServer server = new LocalApiServer(this,
+                            getConfig().getString("local.bind", "127.0.0.1"), getConfig().getInt("local.port", 27111));
+                    server.start();
+                    api = server;
+                }));
+
+        // before any player can be parked in it
+        stages.main("limbo", limbo::open);
+        stages.main("listeners", () -> {
+            getServer().getPluginManager().registerEvents(new LoginListener(this), this);
+            getServer().getPluginManager().registerEvents(new ConnectionListener(this, notifier), this);
+            getCommand("login").setExecutor(new LoginCommand(this));
+            getCommand("register").setExecutor(new RegisterCommand(this));
+        });
 
-        getServer().getPluginManager().registerEvents(new LoginListener(this), this);
-        getCommand("login").setExecutor(new LoginCommand(this));
-        getCommand("register").setExecutor(new RegisterCommand(this));
+        // Nobody can join while onEnable runs, so waiting here keeps half-loaded state out of reach
+        stages.main("wait", io::join);
+        if (stages.failed("accounts")) {
+            // Without the index start() would write the default admin over the real one and every
+            // account would look unknown, so nobody logs in and /ready stays 503 until a restart.
+            getLogger().severe("Accounts failed to load, logins are refused until the server is restarted");
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                userManager.getUnauthenticated().add(p);
+                presence.onConnect(p);
+            }
+            return;
+        }
+        stages.main("users", () -> {
+            userManager.start();
+            // after a reload nobody online is logged in yet
+            for (Player p : Bukkit.getOnlinePlayers()) {
+                userManager.getUnauthenticated().add(p);
+                presence.onConnect(p);
+            }
+            snapshots.publish();
+        });
 
         // Auto-save every 30s
         Bukkit.getScheduler().runTaskTimer(this, userManager::saveAll, 600L, 600L);
 
-        // Start polling online players for IP changes
-        Bukkit.getScheduler().runTaskTimer(this, this::pollPlayers, POLL_INTERVAL, POLL_INTERVAL);
+        // Forget idle rate-limit buckets every minute
+        executor.get("maintenance").scheduleWithFixedDelay(rateLimiter::sweep, 1, 1, TimeUnit.MINUTES);
+        executor.get("maintenance").scheduleWithFixedDelay(admission::sweep, 1, 1, TimeUnit.MINUTES);
 
-        try {
-            String bind = getConfig().getString("local.bind", "127.0.0.1");
-            int port = getConfig().getInt("local.port", 27111);
+        Bukkit.getScheduler().runTaskTimer(this, presence::reconcile, RECONCILE_INTERVAL, RECONCILE_INTERVAL);
 
-            LocalApiServer api = new LocalApiServer(this, bind, port);
-            api.start();
-        } catch (IOException e) {
-            getLogger().warning("Failed to start local API: " + e.getMessage());
-        }
+        // Let go of login destinations nobody used within their TTL (every 10s)
+        Bukkit.getScheduler().runTaskTimer(this, userManager.getPrefetcher()::sweep, 200L, 200L);
+
+        // Persist newly resolved skins every 5 minutes
+        executor.get("persistence").scheduleWithFixedDelay(userManager.getSkinCache()::flush, 5, 5, TimeUnit.MINUTES);
+
+        // Logins are accepted from the first tick on
+        Bukkit.getScheduler().runTask(this, () -> {
+            stages.markReady();
+            getLogger().info("Ready after " + stages.getReadyMillis() + "ms (" + stages.summary() + ")");
+            notifier.notifyReady(stages.toJson());
+        });
     }
 
     @Override
     public void onDisable() {
+        if (api != null) {
+            api.stop();
+        }
         if (userManager != null) {
             userManager.saveAll();
+            userManager.close();
+        }
+        if (events != null) {
+            events.close();
+        }
+        if (notifier != null) {
+            notifier.close(getConfig().getLong("supervisor.shutdownTimeoutSeconds", 5) * 1000L);
+        }
+        if (executor != null) {
+            executor.shutdown(getConfig().getLong("executor.shutdownTimeoutSeconds", 5) * 1000L);
         }
     }
 
@@ -70,77 +154,81 @@ public class SimpleAuth extends JavaPlugin {
         return instance;
     }
 
+    public BackgroundExecutor getExecutor() {
+        return executor;
+    }
+
+    public StartupStages getStages() {
+        return stages;
+    }
+
+    public Limbo getLimbo() {
+        return limbo;
+    }
+
     public UserManager getUserManager() {
         return userManager;
     }
 
-    private void pollPlayers() {
-        Map<UUID, String> currentOnlineIps = new HashMap<>(); 
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            InetSocketAddress address = player.getAddress();
-            if (address != null) {
-                String ip = address.getAddress().getHostAddress();
-                currentOnlineIps.put(player.getUniqueId(), ip);
-                
-                // New player connected
-                if (!onlinePlayerIps.containsKey(player.getUniqueId())) {
-                    onPlayerConnected(player.getUniqueId(), ip);
-                }
-            }
-        }
+    public LoginRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
 
-        // Detect disconnected players
-        for (UUID uuid : onlinePlayerIps.keySet()) {
-            if (!currentOnlineIps.containsKey(uuid)) {
-                // Retrieve the username for the disconnecting player
-                Player player = Bukkit.getPlayer(uuid);
-                String authUser = this.getUserManager().getAuthUserFromID(uuid);
-                onPlayerDisconnected(uuid, onlinePlayerIps.get(uuid), authUser);
-            }
-        }
-        
-        // Update snapshot 
-        onlinePlayerIps.clear(); 
-        onlinePlayerIps.putAll(currentOnlineIps); 
+    public AdmissionCache getAdmission() {
+        return admission;
+    }
+
+    public PresenceTracker getPresence() {
+        return presence;
+    }
+
+    public ExternalNotifier getNotifier() {
+        return notifier;
     }
 
-    private void onPlayerConnected(UUID uuid, String ip) {
+    public OnlineSnapshots getSnapshots() {
+        return snapshots;
+    }
+
+    public PresenceEventFeed getEvents() {
+        return events;
+    }
+
+    public void onPlayerConnected(UUID uuid, String ip) {
         getLogger().info("Player connected: " +  uuid + " @ " + ip);
+        snapshots.publish();
+        events.publish("connect", uuid, playerName(uuid), null, ip);
     }
 
     public void onPlayerLogged(UUID uuid, String ip, String authUser) {
         getLogger().info("Player logged: " + authUser + "(" +  uuid + ") @ " + ip);
+        snapshots.publish();
+        events.publish("login", uuid, playerName(uuid), authUser, ip);
         notifySupervisor("/logged", authUser);
     }
 
-    private void onPlayerDisconnected(UUID uuid, String ip, String authUser) {
+    // Switched to another account without disconnecting
+    public void onPlayerLoggedOut(UUID uuid, String authUser) {
+        getLogger().info("Player logged out: " + authUser + "(" +  uuid + ")");
+        snapshots.publish();
+        events.publish("logout", uuid, playerName(uuid), authUser, presence.getIp(uuid));
+    }
+
+    public void onPlayerDisconnected(UUID uuid, String ip, String authUser) {
         getLogger().info("Player disconnected: " + authUser + "(" +  uuid + ") @ " + ip);
         // Remove authentication
-        this.getUserManager().unsetAuthenticated(uuid.toString());
+        this.getUserManager().dropSession(uuid);
+        snapshots.publish();
+        events.publish("disconnect", uuid, null, authUser, ip);
         notifySupervisor("/deauthorize", authUser);
     }
 
+    private String playerName(UUID uuid) {
+        Player p = Bukkit.getPlayer(uuid);
+        return p == null ? null : p.getName();
+    }
+
     private void notifySupervisor(String endpoint, String username) {
-        if (username == null || username.isEmpty()) return;
-        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
-            try {
-                String url = SUPERVISOR_URL + endpoint;
-                String json = "{\"username\":\"" + username + "\"}";
-
-                HttpRequest request = HttpRequest.newBuilder()
-                        .uri(URI.create(url))
-                        .timeout(Duration.ofSeconds(5))
-                        .header("Content-Type", "application/json")
-                        .POST(HttpRequest.BodyPublishers.ofString(json))
-                        .build();
-
-                HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-                if (response.statusCode() < 200 || response.statusCode() >= 300) {
-                    getLogger().warning("Supervisor " + endpoint + " failed (" + response.statusCode() + "): " + response.body());
-                }
-            } catch (Exception e) {
-                getLogger().warning("Error calling supervisor " + endpoint + ": " + e.getMessage());
-            }
-        });
+        notifier.post(endpoint, username);
     }
 }
\ No newline at end of file
@@ -0,0 +1,146 @@
+package com.simpleauth;
+
+import net.skinsrestorer.api.property.SkinIdentifier;
+import net.skinsrestorer.api.property.SkinType;
+import net.skinsrestorer.api.property.SkinVariant;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+// Skins almost never change, so remember what SkinsRestorer told us:
+//   skin url -> resolved identifier (skips findOrCreateSkinData, which may call MineSkin)
+//   player   -> last texture url   (skips the player storage lookup on every autosave)
+// Both are LRU maps bounded by maxEntries and mirrored to skins.yml so they survive restarts.
+// Thread-safe; the file is only written from flush(), off the main thread.
+public class SkinCache {
+    private final Plugin plugin;
+    private final File file;
+    private final Map<String, SkinIdentifier> skins;
+    private final Map<UUID, String> players;
+    private boolean dirty; // guarded by this
+
+    private final LongAdder skinHits = new LongAdder();
+    private final LongAdder skinMisses = new LongAdder();
+    private final LongAdder playerHits = new LongAdder();
+    private final LongAdder playerMisses = new LongAdder();
+
+    public SkinCache(Plugin plugin, File file, int maxEntries) {
+        this.plugin = plugin;
+        this.file = file;
+        this.skins = lru(maxEntries);
+        this.players = lru(maxEntries);
+    }
+
+    public synchronized void load() {
+        if (!file.exists()) return;
+        YamlConfiguration yaml = YamlConfiguration.loadConfiguration(file);
+        ConfigurationSection skinSection = yaml.getConfigurationSection("skins");
+        if (skinSection != null) {
+            for (String key : skinSection.getKeys(false)) {
+                ConfigurationSection s = skinSection.getConfigurationSection(key);
+                if (s == null) continue;
+                try {
+                    String variant = s.getString("variant");
+                    skins.put(s.getString("url"), SkinIdentifier.of(s.getString("identifier"),
+                            variant == null ? null : SkinVariant.valueOf(variant),
+                            SkinType.valueOf(s.getString("type"))));
+                } catch (IllegalArgumentException | NullPointerException e) {
+                    plugin.getLogger().warning("Skipping bad skin cache entry " + key);
+                }
+            }
+        }
+        ConfigurationSection playerSection = yaml.getConfigurationSection("players");
+        if (playerSection != null) {
+            for (String key : playerSection.getKeys(false)) {
+                try {
+                    players.put(UUID.fromString(key), playerSection.getString(key));
+                } catch (IllegalArgumentException ignored) {}
+            }
+        }
+    }
+
+    public synchronized SkinIdentifier getSkin(String url) {
+        SkinIdentifier skin = skins.get(url);
+        (skin != null ? skinHits : skinMisses).increment();
+        return skin;
+    }
+
+    public synchronized void putSkin(String url, SkinIdentifier skin) {
+        if (url == null || skin == null) return;
+        if (!skin.equals(skins.put(url, skin))) dirty = true;
+    }
+
+    public synchronized String getPlayerSkin(UUID player) {
+        String url = players.get(player);
+        (url != null ? playerHits : playerMisses).increment();
+        return url;
+    }
+
+    public synchronized void putPlayerSkin(UUID player, String url) {
+        if (url == null) return;
+        if (!url.equals(players.put(player, url))) dirty = true;
+    }
+
+    // Writes skins.yml if anything changed; call off the main thread
+    public void flush() {
+        YamlConfiguration yaml = new YamlConfiguration();
+        synchronized (this) {
+            if (!dirty) return;
+            int i = 0;
+            for (Map.Entry<String, SkinIdentifier> e : skins.entrySet()) {
+                String path = "skins." + i++;
+                SkinIdentifier skin = e.getValue();
+                yaml.set(path + ".url", e.getKey());
+                yaml.set(path + ".identifier", skin.getIdentifier());
+                yaml.set(path + ".type", skin.getSkinType().name());
+                if (skin.getSkinVariant() != null) yaml.set(path + ".variant", skin.getSkinVariant().name());
+            }
+            for (Map.Entry<UUID, String> e : players.entrySet()) {
+                yaml.set("players." + e.getKey(), e.getValue());
+            }
+            dirty = false;
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            yaml.save(tmp);
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save " + file.getName() + ": " + e.getMessage());
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    public long getSkinHits() { return skinHits.sum(); }
+    public long getSkinMisses() { return skinMisses.sum(); }
+    public long getPlayerHits() { return playerHits.sum(); }
+    public long getPlayerMisses() { return playerMisses.sum(); }
+
+    public synchronized int getSkinCount() { return skins.size(); }
+    public synchronized int getPlayerCount() { return players.size(); }
+
+    private static <K, V> Map<K, V> lru(int maxEntries) {
+        return new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+}
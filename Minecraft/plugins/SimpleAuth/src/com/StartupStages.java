@@ -0,0 +1,150 @@
+package com.simpleauth;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Timings of onEnable, split into named stages. Independent I/O (account index, skin cache, HTTP bind,
+// notifier outbox) runs in parallel on background threads while the main thread does its own part.
+// The plugin is ready once everything has run and the server ticks, i.e. when logins are accepted;
+// /ready serves these timings and returns 503 until then.
+public class StartupStages {
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static final class Stage {
+        final String name;
+        final boolean background;
+        volatile long startNanos;
+        volatile long endNanos;
+        volatile String error;
+
+        Stage(String name, boolean background) {
+            this.name = name;
+            this.background = background;
+        }
+    }
+
+    private final Logger logger;
+    private final long startedAt = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>(); // guarded by itself
+    private volatile long readyNanos;
+
+    public StartupStages(Logger logger) {
+        this.logger = logger;
+    }
+
+    // Runs task on executor. The returned future completes normally even if the task fails,
+    // the error is recorded on the stage instead.
+    public CompletableFuture<Void> background(String name, Executor executor, Task task) {
+        Stage stage = add(name, true);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Runnable body = () -> {
+            run(stage, task);
+            done.complete(null);
+        };
+        try {
+            executor.execute(body);
+        } catch (RejectedExecutionException e) {
+            body.run(); // no room on the lane: run it here, still timed
+        }
+        return done;
+    }
+
+    // Runs task on the calling (main) thread
+    public void main(String name, Task task) {
+        run(add(name, false), task);
+    }
+
+    // True if the named stage ran and threw
+    public boolean failed(String name) {
+        synchronized (stages) {
+            for (Stage s : stages) {
+                if (s.name.equals(name) && s.error != null) return true;
+            }
+        }
+        return false;
+    }
+
+    public void markReady() {
+        readyNanos = System.nanoTime();
+    }
+
+    public boolean isReady() {
+        return readyNanos != 0;
+    }
+
+    public long getReadyMillis() {
+        long ready = readyNanos;
+        return ready == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(ready - startNanos);
+    }
+
+    // "accounts 412ms, skins 35ms, ..." for the startup log
+    public String summary() {
+        StringBuilder out = new StringBuilder();
+        synchronized (stages) {
+            for (Stage s : stages) {
+                if (out.length() > 0) out.append(", ");
+                out.append(s.name).append(' ').append(Math.round(millis(s.endNanos - s.startNanos))).append("ms");
+                if (s.error != null) out.append(" (failed)");
+            }
+        }
+        return out.toString();
+    }
+
+    public JsonObject toJson() {
+        JsonObject result = new JsonObject();
+        result.addProperty("ready", isReady());
+        result.addProperty("startedAt", startedAt);
+        result.addProperty("readyAfterMillis", getReadyMillis());
+        JsonArray arr = new JsonArray();
+        synchronized (stages) {
+            for (Stage s : stages) {
+                JsonObject o = new JsonObject();
+                o.addProperty("name", s.name);
+                o.addProperty("thread", s.background ? "background" : "main");
+                o.addProperty("startMillis", millis(s.startNanos - startNanos));
+                long end = s.endNanos;
+                o.addProperty("status", end == 0 ? "running" : s.error == null ? "done" : "failed");
+                if (end != 0) o.addProperty("millis", millis(end - s.startNanos));
+                if (s.error != null) o.addProperty("error", s.error);
+                arr.add(o);
+            }
+        }
+        result.add("stages", arr);
+        return result;
+    }
+
+    private Stage add(String name, boolean background) {
+        Stage stage = new Stage(name, background);
+        synchronized (stages) {
+            stages.add(stage);
+        }
+        return stage;
+    }
+
+    private void run(Stage stage, Task task) {
+        stage.startNanos = System.nanoTime();
+        try {
+            task.run();
+        } catch (Exception e) {
+            stage.error = e.toString();
+            logger.severe("Startup stage " + stage.name + " failed: " + e);
+        } finally {
+            stage.endNanos = System.nanoTime();
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,78 @@
+package com.simpleauth;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+// Online players that haven't logged in yet. The high-frequency move/damage handlers are only
+// registered while this set is non-empty, so a server where everyone is logged in pays nothing.
+// Main thread only.
+public class UnauthenticatedPlayers implements Listener {
+    public static final double SKY_HEIGHT = 300; // height in blocks, well above build limit
+
+    private final Plugin plugin;
+    private final Set<UUID> players = new HashSet<>();
+    private boolean registered;
+
+    public UnauthenticatedPlayers(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public void add(Player p) {
+        players.add(p.getUniqueId());
+        if (!registered) {
+            Bukkit.getPluginManager().registerEvents(this, plugin);
+            registered = true;
+        }
+    }
+
+    public void remove(UUID id) {
+        if (players.remove(id) && players.isEmpty() && registered) {
+            HandlerList.unregisterAll(this);
+            registered = false;
+        }
+    }
+
+    public boolean contains(Player p) {
+        return !players.isEmpty() && players.contains(p.getUniqueId());
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    // Prevent moving horizontally
+    @EventHandler
+    public void onMove(PlayerMoveEvent e) {
+        Metrics.handlerCalled(Metrics.Handler.MOVE);
+        if (!e.hasChangedPosition() || !contains(e.getPlayer())) return;
+        Location from = e.getFrom();
+        Location to = e.getTo();
+        if (from.getX() != to.getX() || from.getZ() != to.getZ()) {
+            // reuse the event's target instead of allocating a new Location
+            to.setX(from.getX());
+            to.setY(Math.max(from.getY(), SKY_HEIGHT));
+            to.setZ(from.getZ());
+            e.setTo(to);
+        }
+    }
+
+    // Prevent any damage while unlogged
+    @EventHandler
+    public void onDamage(EntityDamageEvent e) {
+        Metrics.handlerCalled(Metrics.Handler.DAMAGE);
+        if (e.getEntity() instanceof Player p && contains(p)) {
+            e.setCancelled(true);
+        }
+    }
+}
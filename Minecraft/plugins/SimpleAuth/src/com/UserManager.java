@@ -2,167 +2,615 @@ package com.simpleauth;
 
 import net.skinsrestorer.api.SkinsRestorer;
 import net.skinsrestorer.api.SkinsRestorerProvider;
+import net.skinsrestorer.api.event.SkinApplyEvent;
 import net.skinsrestorer.api.exception.DataRequestException;
 import net.skinsrestorer.api.exception.MineSkinException;
 import net.skinsrestorer.api.property.InputDataResult;
 import net.skinsrestorer.api.storage.PlayerStorage;
-import net.skinsrestorer.api.storage.SkinStorage;
 import net.skinsrestorer.api.PropertyUtils;
 import net.skinsrestorer.api.property.SkinProperty;
+import net.skinsrestorer.api.property.SkinIdentifier;
 
 
-import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.Location;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.UUID;
 import java.util.Optional;
+import java.util.concurrent.*;
 
 public class UserManager {
     private final SimpleAuth plugin;
-    private final File file;
-    private final YamlConfiguration data;
-    private final Map<String, String> authenticated = new HashMap<>(); // playerUUID -> authUser
+    private final UserStorage storage;
+    private final AccountStore accounts; // credentials of every account, the rest on demand
+    private final boolean compressState;
+    private final int hashIterations;
+    private final Executor hashPool; // password hashing never runs on the main thread
+    private final SessionRegistry sessions = new SessionRegistry();
+    private final Map<UUID, Object> restoring = new HashMap<>(); // main thread; login restores in flight
+    private final Map<UUID, SavedFingerprint> saved = new HashMap<>(); // main thread; what was last written per player
+    private final int fullSaveEvery;
+    private int autosaves;
+    private final Executor restorePool;
+    private final Executor skinPool;
+    private final SkinCache skinCache;
+    private final ChunkPrefetcher prefetcher;
+    private final ResumeTokens resumeTokens;
+    private final ClusterNode cluster;
+    private final UnauthenticatedPlayers unauthenticated;
+    private volatile String dummyHash; // hash lane; checked against for unknown users
 
     public static final String SUPERUSER_NAME = "admin";
     private static final String SUPERUSER_HASH = "985a8bb6774d434f9848f8de6591bc1351ce37669d3b4024e703904da6dcacd7";
     private static final String SUPERUSER_SALT = "94328208-6820-4d76-b2cf-5201c7b20b4e"; 
+    private static final long SKIN_TIMEOUT_SECONDS = 15;
 
     public UserManager(SimpleAuth plugin) {
         this.plugin = plugin;
-        this.file = new File(plugin.getDataFolder(), "users.yml");
-        this.data = YamlConfiguration.loadConfiguration(file);
+        this.unauthenticated = new UnauthenticatedPlayers(plugin);
+        this.storage = createStorage();
+        this.accounts = new AccountStore(plugin, storage,
+                plugin.getConfig().getLong("accounts.cacheBudgetKb", 16384) * 1024L, sessions::isActive);
+        this.compressState = plugin.getConfig().getBoolean("storage.compressState", false);
+        this.hashIterations = plugin.getConfig().getInt("security.hashIterations", 210000);
+        this.fullSaveEvery = Math.max(1, plugin.getConfig().getInt("storage.fullSaveEvery", 10));
+        this.hashPool = plugin.getExecutor().get("hash");
+        this.restorePool = plugin.getExecutor().get("restore");
+        this.skinPool = plugin.getExecutor().get("skin");
+        this.skinCache = new SkinCache(plugin, new File(plugin.getDataFolder(), "skins.yml"),
+                plugin.getConfig().getInt("skins.cacheEntries", 2048));
+        this.prefetcher = new ChunkPrefetcher(plugin, plugin.getConfig().getConfigurationSection("prefetch"));
+        this.resumeTokens = new ResumeTokens(plugin.getConfig().getConfigurationSection("resume"));
+        this.cluster = new ClusterNode(plugin, plugin.getConfig().getConfigurationSection("cluster"),
+                plugin.getExecutor().get("maintenance"),
+                sessions::isActive, resumeTokens::revoke,
+                (user, fields) -> runOnMainThread(() -> applyRemote(user, fields)));
+    }
+
+    // Startup stages. loadAccounts and loadSkins are independent and run in parallel off the main
+    // thread; start() runs on the main thread once both are done, before any player can log in.
+    public void loadAccounts() throws IOException {
+        storage.load(accounts::replay);
+    }
+
+    public void loadSkins() {
+        skinCache.load();
+    }
 
+    public void start() {
+        watchSkinChanges();
         ensureSuperuserExists();
+        storage.start();
+        cluster.start();
+        submitHash(this::dummyHash); // ready before the first unknown user, whose check would otherwise take twice as long
+    }
+
+    private UserStorage createStorage() {
+        File yaml = new File(plugin.getDataFolder(), "users.yml");
+        BackgroundExecutor.Lane persistence = plugin.getExecutor().get("persistence");
+        YamlUserStorage yamlStorage = new YamlUserStorage(plugin, persistence, yaml, plugin.getConfig().getLong("storage.flushIntervalSeconds", 5));
+        if (plugin.getConfig().getString("storage.type", "journal").equalsIgnoreCase("yaml")) {
+            return yamlStorage;
+        }
+
+        JournalUserStorage journal = new JournalUserStorage(plugin, persistence, new File(plugin.getDataFolder(), "users.journal"),
+                plugin.getConfig().getLong("storage.syncIntervalMillis", 200),
+                plugin.getConfig().getLong("storage.compactIntervalMinutes", 30));
+
+        // One-shot migration: the old users.yml is kept next to the journal as a backup
+        if (!journal.exists() && yaml.exists()) {
+            try {
+                journal.importFrom(yamlStorage);
+                File backup = new File(plugin.getDataFolder(), "users.yml.migrated");
+                if (yaml.renameTo(backup)) {
+                    plugin.getLogger().info("Migrated users.yml to users.journal (backup: " + backup.getName() + ")");
+                }
+            } catch (IOException e) {
+                plugin.getLogger().severe("Failed to migrate users.yml, staying on YAML storage: " + e.getMessage());
+                return yamlStorage;
+            }
+        }
+        return journal;
     }
 
     private void ensureSuperuserExists() {
-        String path = "users." + SUPERUSER_NAME;
-        if (!data.contains(path)) {
-            data.set(path + ".password", SUPERUSER_HASH);
-            data.set(path + ".salt", SUPERUSER_SALT);
-            data.set(path + ".superuser", true);
-            save();
-            plugin.getLogger().info("Superuser entry created in users.yml");
+        if (!accounts.contains(SUPERUSER_NAME)) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("password", SUPERUSER_HASH);
+            fields.put("salt", SUPERUSER_SALT);
+            fields.put("superuser", true);
+            update(SUPERUSER_NAME, fields);
+            plugin.getLogger().info("Superuser account created");
         }
     }
 
     public boolean userExists(String user) {
-        return data.getString("users." + user + ".password") != null;
+        return accounts.exists(user);
     }
 
-    public void createUser(String user, String pass) {
-        String salt = java.util.UUID.randomUUID().toString();
-        String hash = PasswordUtil.hash(pass, salt);
-        data.set("users." + user + ".password", hash);
-        data.set("users." + user + ".salt", salt);
-        save();
+    // Hashes on the worker pool, the account is stored back on the main thread
+    public CompletableFuture<Void> createUser(String user, String pass) {
+        return submitHash(() -> PasswordUtil.encode(pass, hashIterations))
+                .thenAcceptAsync(hash -> {
+                    Map<String, Object> fields = new LinkedHashMap<>();
+                    fields.put("password", hash);
+                    fields.put("salt", null); // embedded in the hash
+                    update(user, fields);
+                }, this::runOnMainThread);
     }
 
     public boolean isUserAlreadyLogged(String username) {
-        return authenticated.containsValue(username);
+        return sessions.isActive(username) || cluster.isHeldRemotely(username);
     }
 
-    public boolean checkCredentials(String user, String pass) {
-        String salt = data.getString("users." + user + ".salt");
-        String hash = data.getString("users." + user + ".password");
-        if (salt == null || hash == null) return false;
-        return hash.equals(PasswordUtil.hash(pass, salt));
+    // Cluster lease for the account; always granted when cluster mode is off
+    public CompletableFuture<Boolean> acquireAccount(String user) {
+        return cluster.acquire(user);
+    }
+
+    // Main thread. Gives the lease back unless a local session still uses the account
+    public void releaseAccount(String user) {
+        if (!sessions.isActive(user)) cluster.release(user);
+    }
+
+    // Stored values are read here on the main thread, the hash itself runs on the worker pool.
+    // Legacy or weaker hashes are upgraded after a successful check.
+    public CompletableFuture<Boolean> checkCredentials(String user, String pass) {
+        String salt = accounts.getSalt(user);
+        String hash = accounts.getPassword(user);
+        long start = System.nanoTime();
+        if (hash == null) {
+            // same work as a real check, so the response time doesn't tell which accounts exist
+            return submitHash(() -> {
+                PasswordUtil.verify(pass, dummyHash(), null);
+                Metrics.CHECK_CREDENTIALS.recordSince(start);
+                return false;
+            });
+        }
+
+        return submitHash(() -> {
+            boolean ok = PasswordUtil.verify(pass, hash, salt);
+            Metrics.CHECK_CREDENTIALS.recordSince(start);
+            if (!ok) return false;
+            if (PasswordUtil.needsRehash(hash, hashIterations)) {
+                String upgraded = PasswordUtil.encode(pass, hashIterations);
+                runOnMainThread(() -> upgradeHash(user, hash, upgraded));
+            }
+            return true;
+        });
+    }
+
+    private String dummyHash() {
+        String d = dummyHash;
+        if (d == null) dummyHash = d = PasswordUtil.encode(UUID.randomUUID().toString(), hashIterations);
+        return d;
+    }
+
+    private void upgradeHash(String user, String oldHash, String newHash) {
+        // skip if the password changed while we were hashing
+        if (!oldHash.equals(accounts.getPassword(user))) return;
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("password", newHash);
+        fields.put("salt", null);
+        update(user, fields);
+    }
+
+    private <T> CompletableFuture<T> submitHash(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            hashPool.execute(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e); // too many logins queued
+        }
+        return result;
+    }
+
+    private void runOnMainThread(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    // Chunk and teleport futures already complete on the main thread; no need to wait a tick then
+    private void onMainThread(Runnable task) {
+        if (Bukkit.isPrimaryThread()) task.run();
+        else runOnMainThread(task);
     }
 
     public void setAuthenticated(Player p, String user) {
-        authenticated.put(p.getUniqueId().toString(), user);
         String ip = p.getAddress().getAddress().getHostAddress();
+        if (!sessions.bind(p.getUniqueId(), user, ip)) {
+            plugin.getLogger().warning("Account " + user + " is already in use, not logging in " + p.getName());
+            return;
+        }
+        unauthenticated.remove(p.getUniqueId());
+        resumeTokens.revoke(user);
         plugin.onPlayerLogged(p.getUniqueId(), ip , user);
     }
-    
 
-    public void unsetAuthenticated(String uuid) {
-        authenticated.remove(uuid);
+    // Called on join: logs the player back in if they dropped from the same IP within the resume TTL.
+    // The state captured on quit was also the last one written, so it is applied without touching storage.
+    public boolean tryResume(Player p) {
+        var addr = p.getAddress();
+        ResumeTokens.Token token = resumeTokens.claim(p.getUniqueId(), addr == null ? null : addr.getAddress().getHostAddress());
+        if (token == null) return false;
+        String user = token.account();
+        if (!userExists(user) || sessions.isActive(user)) return false;
+
+        if (cluster.isHeldRemotely(user)) return false;
+        setAuthenticated(p, user);
+        if (!isAuthenticated(p)) return false;
+        confirmResume(p, user);
+        PlayerState state = token.state();
+        if (state == null) {
+            loadPlayerData(p, user);
+            return true;
+        }
+        saved.put(p.getUniqueId(), new SavedFingerprint(user, state.fingerprint()));
+        accounts.load(user); // the warm state covers the restore, this brings the rest of the account back in
+        Object restore = new Object();
+        restoring.put(p.getUniqueId(), restore);
+        applyState(p, user, restore, state, System.nanoTime());
+        restoreSkin(p, user, state.skinUrl());
+        return true;
+    }
+
+    // Resumes bind first and ask the cluster after, so the join isn't held up by the network.
+    // Peers refuse leases for accounts with a local session, so losing the race only costs a kick.
+    private void confirmResume(Player p, String user) {
+        if (!cluster.isEnabled()) return;
+        UUID id = p.getUniqueId();
+        cluster.acquire(user).whenComplete((granted, err) -> runOnMainThread(() -> {
+            if (Boolean.TRUE.equals(granted) || !user.equals(sessions.getAccount(id))) return;
+            unsetAuthenticated(id);
+            p.kickPlayer("Your account is in use on another server.");
+        }));
+    }
+
+    // Saves the player and, unless they were kicked, leaves a resume token for a quick reconnect.
+    // The superuser never gets one, admin rights always need the password.
+    public void onQuit(Player p, boolean resumable) {
+        String user = getAuthUser(p);
+        PlayerState state = savePlayerData(p, true);
+        restoring.remove(p.getUniqueId()); // a restore still waiting for chunks is dropped
+        var addr = p.getAddress();
+        if (!resumable || user == null || addr == null || user.equalsIgnoreCase(SUPERUSER_NAME)) return;
+        resumeTokens.issue(p.getUniqueId(), addr.getAddress().getHostAddress(), user, state == null ? null : state.copy());
+    }
+
+    // Logs the player out but keeps them online, back behind the login guards
+    public void unsetAuthenticated(UUID uuid) {
+        dropSession(uuid);
+        Player p = Bukkit.getPlayer(uuid);
+        if (p != null) unauthenticated.add(p);
+    }
+
+    // Forgets the session of a player who left. Bukkit.getPlayer still finds them during the quit
+    // event, so this must not go through unsetAuthenticated or they would be parked again.
+    public void dropSession(UUID uuid) {
+        SessionRegistry.Session session = sessions.unbind(uuid);
+        if (session != null) releaseAccount(session.account());
+        saved.remove(uuid);
+        unauthenticated.remove(uuid);
+    }
+
+    public int getAuthenticatedCount() {
+        return sessions.size();
     }
 
     public boolean isAuthenticated(Player p) {
-        return authenticated.containsKey(p.getUniqueId().toString());
+        return sessions.contains(p.getUniqueId());
     }
 
     public String getAuthUser(Player p) {
-        return authenticated.get(p.getUniqueId().toString());
+        return sessions.getAccount(p.getUniqueId());
     }
 
     public String getAuthUserFromID(UUID id) {
-        return authenticated.get(id.toString());
+        return sessions.getAccount(id);
+    }
+
+    // Safe to read from any thread
+    public SessionRegistry getSessions() {
+        return sessions;
+    }
+
+    public UnauthenticatedPlayers getUnauthenticated() {
+        return unauthenticated;
+    }
+
+    public ResumeTokens getResumeTokens() {
+        return resumeTokens;
+    }
+
+    public AccountStore getAccounts() {
+        return accounts;
+    }
+
+    public ChunkPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    public SkinCache getSkinCache() {
+        return skinCache;
+    }
+
+    // Keeps the player -> url entry current when the skin changes through /skin or another plugin
+    private void watchSkinChanges() {
+        try {
+            SkinsRestorerProvider.get().getEventBus().subscribe(plugin, SkinApplyEvent.class, e -> {
+                if (e.isCancelled() || e.getProperty() == null) return;
+                Player p = e.getPlayer(Player.class);
+                if (p != null) skinCache.putPlayerSkin(p.getUniqueId(), PropertyUtils.getSkinTextureUrl(e.getProperty()));
+            });
+        } catch (IllegalStateException e) {
+            plugin.getLogger().warning("SkinsRestorer not available, skin changes won't be tracked");
+        }
     }
 
     public void savePlayerData(Player p) {
-        if (!isAuthenticated(p)) return;
+        savePlayerData(p, true);
+    }
+
+    // Unless forced, the player is only encoded and written when the state fingerprint differs from
+    // the one last written for the same account, so idle players cost a capture and a hash.
+    // Returns the captured state, null if the player had nothing to save.
+    private PlayerState savePlayerData(Player p, boolean force) {
+        if (!isAuthenticated(p) || restoring.containsKey(p.getUniqueId())) return null;
+        if (plugin.getLimbo().contains(p.getWorld())) return null; // never overwrite the real position with limbo's
+        long start = System.nanoTime();
         String user = getAuthUser(p);
-        data.set("users." + user + ".lastLocation", serializeLocation(p.getLocation()));
-        data.set("users." + user + ".inventory", InventoryUtils.toBase64(p.getInventory()));
-        try {
-            SkinsRestorer api = SkinsRestorerProvider.get();
-            PlayerStorage playerStorage = api.getPlayerStorage();
-            Optional<SkinProperty> property = playerStorage.getSkinForPlayer(p.getUniqueId(), p.getName());
-            if (property.isPresent()) {
-                String textureUrl = PropertyUtils.getSkinTextureUrl(property.get());
-                data.set("users." + user + ".skinUrl", textureUrl);
+        String skinUrl = skinCache.getPlayerSkin(p.getUniqueId());
+        if (skinUrl == null) {
+            try {
+                SkinsRestorer api = SkinsRestorerProvider.get();
+                PlayerStorage playerStorage = api.getPlayerStorage();
+                Optional<SkinProperty> property = playerStorage.getSkinForPlayer(p.getUniqueId(), p.getName());
+                if (property.isPresent()) {
+                    skinUrl = PropertyUtils.getSkinTextureUrl(property.get());
+                    skinCache.putPlayerSkin(p.getUniqueId(), skinUrl);
+                }
+            } catch (DataRequestException e) {
+                e.printStackTrace();
             }
-        } catch (DataRequestException e) {
-            e.printStackTrace();
         }
-        save();
+        if (skinUrl == null) skinUrl = getSavedSkinUrl(user);
+
+        PlayerState state = PlayerState.capture(p, skinUrl);
+        SavedFingerprint fingerprint = new SavedFingerprint(user, state.fingerprint());
+        if (!force && fingerprint.equals(saved.get(p.getUniqueId()))) {
+            Metrics.SAVE_UNCHANGED.increment();
+            return state;
+        }
+
+        Map<String, Object> fields = new LinkedHashMap<>();
+        fields.put("state", state.encode(compressState));
+        // superseded by the state record
+        fields.put("inventory", null);
+        fields.put("lastLocation", null);
+        fields.put("skinUrl", null);
+        update(user, fields);
+        saved.put(p.getUniqueId(), fingerprint);
+        Metrics.SAVE_WRITTEN.increment();
+        Metrics.SAVE_PLAYER_DATA.recordSince(start);
+        return state;
     }
 
+    private record SavedFingerprint(String user, long fingerprint) {}
+
+    // Staged restore so a login burst doesn't stall the tick:
+    //   1. main thread: copy the saved fields (read from storage first if the account isn't resident)
+    //      and start loading the destination chunks
+    //   2. restore pool: decode the record and deserialize the inventory
+    //   3. main thread, once the chunks are loaded: teleportAsync, then apply the inventory with it
+    //   4. skin pool: resolve the skin (may be a remote request), applied on the main thread when ready
+    // savePlayerData skips the player until step 3, so the limbo inventory never overwrites saved state.
     public void loadPlayerData(Player p, String user) {
-        String inv = data.getString("users." + user + ".inventory");
-        String loc = data.getString("users." + user + ".lastLocation");
-        if (inv != null) InventoryUtils.fromBase64(p.getInventory(), inv);
-        if (loc != null) 
-            p.teleport(deserializeLocation(loc));
-        else
-            p.teleport(plugin.getServer().getWorlds().get(0).getSpawnLocation());
-        p.setFlying(false);
-        p.setAllowFlight(false);
-
-        // Restore skin
-        String savedSkinUrl = data.getString("users." + user + ".skinUrl");
-        if (savedSkinUrl != null && !savedSkinUrl.isEmpty()) {
-            SkinUtil.setAndApplySkin(p, savedSkinUrl);
-            p.sendMessage("§aRestored saved skin for user " + user);
-        } else {
+        long start = System.nanoTime();
+        UUID id = p.getUniqueId();
+        Object token = new Object();
+        restoring.put(id, token);
+        accounts.load(user).whenComplete((fields, err) -> {
+            if (restoring.get(id) != token) return; // superseded or quit
+            if (err == null) {
+                restore(p, user, token, getSavedState(fields), start);
+            } else if (p.isOnline() && user.equals(sessions.getAccount(id))) {
+                // still marked as restoring, so the quit doesn't save limbo over the unread account
+                p.kickPlayer("Could not load your account, please reconnect.");
+            } else {
+                restoring.remove(id, token);
+            }
+        });
+    }
+
+    private void restore(Player p, String user, Object token, SavedState saved, long start) {
+        UUID id = p.getUniqueId();
+        prefetcher.prefetch(getDestination(saved));
+
+        CompletableFuture<PlayerState> decoded;
+        try {
+            decoded = CompletableFuture.supplyAsync(() -> decodeState(user, saved), restorePool);
+        } catch (RejectedExecutionException e) {
+            decoded = CompletableFuture.completedFuture(decodeState(user, saved)); // pool saturated: decode here
+        }
+
+        decoded.whenComplete((state, err) -> runOnMainThread(() -> {
+            if (restoring.get(id) != token) return; // superseded by a newer login
+            if (!p.isOnline() || !user.equals(sessions.getAccount(id))) { // quit or switched account meanwhile
+                restoring.remove(id, token);
+                return;
+            }
+            if (err != null) {
+                plugin.getLogger().warning("Failed to restore state for " + user + ": " + err.getMessage());
+                p.sendMessage("§cCould not restore your saved state, sending you to spawn.");
+            }
+            applyState(p, user, token, err != null ? null : state, start);
+            restoreSkin(p, user, state == null ? null : state.skinUrl());
+        }));
+    }
+
+    // Starts loading the chunks around where this account will be placed. Called as soon as the
+    // account is known, so the loads overlap the password check and the decode.
+    // The account's saved fields are read here too if they aren't resident.
+    public void prefetchDestination(String user) {
+        accounts.load(user).thenAccept(fields -> prefetcher.prefetch(getDestination(getSavedState(fields))));
+    }
+
+    // Saved location from the record header (or the legacy field), world spawn if there is none
+    private Location getDestination(SavedState saved) {
+        Location loc = null;
+        try {
+            if (saved.record() != null) loc = PlayerState.peekLocation(saved.record(), plugin.getServer());
+            else if (saved.location() != null) loc = PlayerState.fromLegacy(null, saved.location(), null).toLocation(plugin.getServer());
+        } catch (IOException | RuntimeException e) {
+            // corrupt record, decodeState reports it
+        }
+        return loc != null ? loc : plugin.getServer().getWorlds().get(0).getSpawnLocation();
+    }
+
+    // Inventory and position are applied together, once the player has arrived at the destination.
+    // The player stays in limbo (and out of autosave) until then.
+    private void applyState(Player p, String user, Object token, PlayerState state, long start) {
+        UUID id = p.getUniqueId();
+        Location saved = state == null ? null : state.toLocation(plugin.getServer());
+        Location loc = saved != null ? saved : plugin.getServer().getWorlds().get(0).getSpawnLocation();
+        prefetcher.prefetch(loc).thenCompose(v -> {
+            if (restoring.get(id) != token || !p.isOnline() || !user.equals(sessions.getAccount(id))) {
+                restoring.remove(id, token);
+                return CompletableFuture.completedFuture(null);
+            }
+            return p.teleportAsync(loc).handle((moved, err) -> {
+                if (!Boolean.TRUE.equals(moved)) p.teleport(loc); // cancelled by another plugin
+                return null;
+            });
+        }).whenComplete((v, err) -> onMainThread(() -> {
+            if (!restoring.remove(id, token) || !p.isOnline()) return;
+            if (state != null && state.inventory() != null) p.getInventory().setContents(state.inventory());
+            p.setFlying(false);
+            p.setAllowFlight(false);
+            Metrics.LOAD_PLAYER_DATA.recordSince(start);
+        }));
+    }
+
+    private void restoreSkin(Player p, String user, String skinUrl) {
+        if (skinUrl == null || skinUrl.isEmpty()) {
             p.sendMessage("§eNo saved skin found, using default.");
+            return;
         }
+
+        UUID id = p.getUniqueId();
+        SkinIdentifier cached = skinCache.getSkin(skinUrl);
+        if (cached != null) {
+            applySkin(p, user, skinUrl, cached);
+            return;
+        }
+
+        CompletableFuture<SkinIdentifier> resolved;
+        try {
+            resolved = CompletableFuture.supplyAsync(() -> SkinUtil.resolve(skinUrl), skinPool);
+        } catch (RejectedExecutionException e) {
+            p.sendMessage("§eSkin service is busy, using default skin.");
+            return;
+        }
+
+        resolved.orTimeout(SKIN_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((skin, err) -> runOnMainThread(() -> {
+            if (!p.isOnline() || !user.equals(sessions.getAccount(id))) return;
+            if (err != null || skin == null) {
+                if (err != null) plugin.getLogger().warning("Skin lookup failed for " + user + ": " + err);
+                p.sendMessage("§cCould not restore your skin, using default.");
+                return;
+            }
+            skinCache.putSkin(skinUrl, skin);
+            applySkin(p, user, skinUrl, skin);
+        }));
     }
 
-    public class SkinUtil {
+    private void applySkin(Player p, String user, String skinUrl, SkinIdentifier skin) {
+        SkinUtil.apply(p, skin);
+        skinCache.putPlayerSkin(p.getUniqueId(), skinUrl);
+        p.sendMessage("§aRestored saved skin for user " + user);
+    }
 
-        public static void setAndApplySkin(Player player, String input) {
-            SkinsRestorer api = SkinsRestorerProvider.get();
+    // Raw saved fields, copied on the main thread so decoding can run anywhere
+    private record SavedState(byte[] record, String inventory, String location, String skinUrl) {}
 
+    private static SavedState getSavedState(Map<String, Object> fields) {
+        return new SavedState(getStateBytes(fields),
+                getString(fields, "inventory"),
+                getString(fields, "lastLocation"),
+                getString(fields, "skinUrl"));
+    }
+
+    // Binary state record if the account has one, otherwise whatever the legacy fields hold
+    private PlayerState decodeState(String user, SavedState saved) {
+        if (saved.record() != null) {
             try {
-                SkinStorage skinStorage = api.getSkinStorage();
-                PlayerStorage playerStorage = api.getPlayerStorage();
+                return PlayerState.decode(saved.record());
+            } catch (IOException e) {
+                plugin.getLogger().warning("Corrupt saved state for " + user + ": " + e.getMessage());
+                return null;
+            }
+        }
+        if (saved.inventory() == null && saved.location() == null && saved.skinUrl() == null) return null;
+        return PlayerState.fromLegacy(saved.inventory(), saved.location(), saved.skinUrl());
+    }
 
-                // findOrCreateSkinData supports player names AND URLs
-                Optional<InputDataResult> result = skinStorage.findOrCreateSkinData(input);
+    // Accounts in use are always resident, see AccountStore
+    private String getSavedSkinUrl(String user) {
+        Map<String, Object> fields = accounts.getIfLoaded(user);
+        if (fields == null) return null;
+        byte[] record = getStateBytes(fields);
+        if (record == null) return getString(fields, "skinUrl");
+        try {
+            return PlayerState.peekSkinUrl(record);
+        } catch (IOException e) {
+            return null;
+        }
+    }
 
-                if (result.isEmpty()) {
-                    player.sendMessage("§cSkin not found: " + input);
-                    return;
-                }
+    // The journal keeps raw bytes, users.yml keeps them Base64 encoded
+    private static byte[] getStateBytes(Map<String, Object> fields) {
+        Object raw = fields.get("state");
+        if (raw instanceof byte[] bytes) return bytes;
+        if (raw instanceof String s) return Base64.getDecoder().decode(s);
+        return null;
+    }
 
-                // store skin ID for player
-                playerStorage.setSkinIdOfPlayer(player.getUniqueId(), result.get().getIdentifier());
+    private static String getString(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        return value == null ? null : value.toString();
+    }
 
-                // apply immediately
-                api.getSkinApplier(Player.class).applySkin(player);
+    public class SkinUtil {
 
+        // Blocking: findOrCreateSkinData may fetch from Mojang/MineSkin, so never call it on the main thread.
+        // Accepts player names AND URLs; null if nothing was found
+        public static SkinIdentifier resolve(String input) {
+            try {
+                Optional<InputDataResult> result = SkinsRestorerProvider.get().getSkinStorage().findOrCreateSkinData(input);
+                return result.map(InputDataResult::getIdentifier).orElse(null);
             } catch (DataRequestException | MineSkinException e) {
-                e.printStackTrace();
-                player.sendMessage("§cFailed to set skin: " + e.getMessage());
+                throw new CompletionException(e);
+            }
+        }
+
+        // Main thread: store the skin ID for the player and apply it immediately
+        public static void apply(Player player, SkinIdentifier skin) {
+            SkinsRestorer api = SkinsRestorerProvider.get();
+            try {
+                api.getPlayerStorage().setSkinIdOfPlayer(player.getUniqueId(), skin);
+                api.getSkinApplier(Player.class).applySkin(player);
             } catch (Exception e) {
                 e.printStackTrace();
                 player.sendMessage("§cUnexpected error while applying skin.");
@@ -171,33 +619,42 @@ public class UserManager {
     }
 
     public void saveAll() {
-        for (Player p : plugin.getServer().getOnlinePlayers()) savePlayerData(p);
+        long start = System.nanoTime();
+        // every fullSaveEvery-th pass writes everyone, in case a fingerprint collision hid a change
+        boolean force = ++autosaves % fullSaveEvery == 0;
+        for (Player p : plugin.getServer().getOnlinePlayers()) savePlayerData(p, force);
+        Metrics.SAVE_ALL.recordSince(start);
     }
 
-    private void save() {
-        try {
-            data.save(file);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-    
-    private String serializeLocation(Location loc) {
-        return String.join(";",
-            loc.getWorld().getName(),
-            Double.toString(loc.getX()),
-            Double.toString(loc.getY()),
-            Double.toString(loc.getZ())
-        );
-    }
-
-    private Location deserializeLocation(String s) {
-        String[] p = s.split(";");
-        return new Location(
-            plugin.getServer().getWorld(p[0]),
-            Double.parseDouble(p[1]),
-            Double.parseDouble(p[2]),
-            Double.parseDouble(p[3])
-        );
+    // Flushes pending changes to disk and stops the background writer
+    public void close() {
+        prefetcher.close();
+        skinCache.flush();
+        cluster.close(plugin.getConfig().getLong("cluster.shutdownTimeoutMillis", 1000));
+        storage.close(plugin.getConfig().getLong("storage.shutdownTimeoutSeconds", 10) * 1000L);
+    }
+
+    // In-memory update plus one queued storage write; the backend persists it off the main thread.
+    // In cluster mode the change is also pushed to the other nodes.
+    private void update(String user, Map<String, Object> fields) {
+        accounts.update(user, fields);
+        storage.write(user, fields);
+        cluster.publish(user, fields);
+    }
+
+    // Main thread. A write made on another node; ignored while this node has the account in use,
+    // since only the lease holder writes it
+    private void applyRemote(String user, Map<String, Object> fields) {
+        if (sessions.isActive(user)) {
+            plugin.getLogger().warning("Ignoring cluster update for " + user + ", it is logged in here");
+            return;
+        }
+        resumeTokens.revoke(user); // the warm state is stale now
+        accounts.update(user, fields);
+        storage.write(user, fields);
+    }
+
+    public ClusterNode getCluster() {
+        return cluster;
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package com.simpleauth;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+public interface UserStorage {
+
+    // Replays every stored account into the sink, oldest change first. Called once at startup.
+    void load(BiConsumer<String, Map<String, Object>> sink) throws IOException;
+
+    // Current fields of one account, including writes still queued. Completes off the main thread;
+    // an account with nothing stored yields an empty map.
+    CompletableFuture<Map<String, Object>> read(String user);
+
+    // Queues the changed fields of one account. Runs on the main thread, so it must not do I/O.
+    void write(String user, Map<String, Object> fields);
+
+    void start();
+
+    // Persists everything still queued and releases the backend, waiting at most timeoutMillis
+    void close(long timeoutMillis);
+}
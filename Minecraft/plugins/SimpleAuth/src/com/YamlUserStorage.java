@@ -0,0 +1,134 @@
+package com.simpleauth;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+// Legacy users.yml backend: changes are coalesced and the whole file is rewritten per interval
+public class YamlUserStorage implements UserStorage {
+    private static final Object REMOVED = new Object(); // ConcurrentHashMap can't hold nulls
+
+    private final Plugin plugin;
+    private final File file;
+    private final long intervalSeconds;
+    private final Map<String, Object> dirty = new ConcurrentHashMap<>(); // path -> latest value
+    private final BackgroundExecutor.Lane flusher; // single-threaded
+    private volatile boolean closed;
+
+    // Copy of what is on disk, only ever touched by the flusher lane
+    private YamlConfiguration persisted;
+
+    public YamlUserStorage(Plugin plugin, BackgroundExecutor.Lane flusher, File file, long intervalSeconds) {
+        this.plugin = plugin;
+        this.flusher = flusher;
+        this.file = file;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    @Override
+    public void load(BiConsumer<String, Map<String, Object>> sink) {
+        ConfigurationSection users = YamlConfiguration.loadConfiguration(file).getConfigurationSection("users");
+        if (users == null) return;
+        for (String user : users.getKeys(false)) {
+            ConfigurationSection section = users.getConfigurationSection(user);
+            if (section != null) sink.accept(user, section.getValues(false));
+        }
+    }
+
+    @Override
+    public void start() {
+        flusher.execute(() -> persisted = YamlConfiguration.loadConfiguration(file));
+        flusher.scheduleWithFixedDelay(this::flush, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // persisted already holds every account for the full rewrites, so this is a lookup on the flusher lane
+    @Override
+    public CompletableFuture<Map<String, Object>> read(String user) {
+        return flusher.submit(() -> {
+            Map<String, Object> fields = new HashMap<>();
+            ConfigurationSection section = persisted.getConfigurationSection("users." + user);
+            if (section != null) fields.putAll(section.getValues(false));
+            String prefix = "users." + user + ".";
+            for (Map.Entry<String, Object> e : dirty.entrySet()) {
+                if (!e.getKey().startsWith(prefix)) continue;
+                String field = e.getKey().substring(prefix.length());
+                if (e.getValue() == REMOVED) fields.remove(field);
+                else fields.put(field, e.getValue());
+            }
+            return fields;
+        });
+    }
+
+    // Called from the main thread: only records the change, the write happens later
+    @Override
+    public void write(String user, Map<String, Object> fields) {
+        for (Map.Entry<String, Object> e : fields.entrySet()) {
+            Object value = e.getValue();
+            if (value instanceof byte[] bytes) value = Base64.getEncoder().encodeToString(bytes);
+            dirty.put("users." + user + "." + e.getKey(), value == null ? REMOVED : value);
+        }
+    }
+
+    private void flush() {
+        if (closed || dirty.isEmpty()) return;
+
+        for (Map.Entry<String, Object> e : dirty.entrySet()) {
+            Object value = e.getValue();
+            persisted.set(e.getKey(), value == REMOVED ? null : value);
+            // a newer value set meanwhile stays dirty for the next flush
+            dirty.remove(e.getKey(), value);
+        }
+
+        try {
+            writeAtomically(persisted.saveToString());
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to write " + file.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void writeAtomically(String contents) throws IOException {
+        Path target = file.toPath();
+        Path tmp = target.resolveSibling(file.getName() + ".tmp");
+        Files.createDirectories(target.getParent());
+        Files.writeString(tmp, contents, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Flushes whatever is still pending and stops the flusher, waiting at most timeoutMillis
+    @Override
+    public void close(long timeoutMillis) {
+        try {
+            flusher.submit(() -> {
+                flush();
+                closed = true;
+                return null;
+            }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            plugin.getLogger().warning("Timed out waiting for " + file.getName() + " to flush, " + dirty.size() + " changes pending");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to flush " + file.getName() + ": " + e);
+        } finally {
+            closed = true;
+        }
+    }
+}
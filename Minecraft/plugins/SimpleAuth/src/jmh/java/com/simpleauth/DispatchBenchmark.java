@@ -0,0 +1,124 @@
+package com.simpleauth;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Per-event cost of the move guard. "before*" is the original LoginListener.onMove, which looked the
+// player up in the session map and allocated a Location; "after*" is UnauthenticatedPlayers.onMove.
+// Once everyone is logged in the new handler is unregistered, so afterAllLoggedIn is an upper bound.
+// The session lookups compare the original HashMap (containsValue for the account check) with SessionRegistry.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+    @Param({"1", "100"})
+    int online;
+
+    private final Map<UUID, String> authenticated = new HashMap<>();
+    private final SessionRegistry sessions = new SessionRegistry();
+    private UnauthenticatedPlayers empty;
+    private UnauthenticatedPlayers guarding;
+    private Player loggedIn;
+    private Player waiting;
+    private World world;
+    private Location from;
+    private PlayerMoveEvent loggedInMove;
+    private PlayerMoveEvent waitingMove;
+
+    @Setup
+    public void setup() {
+        Stubs.install();
+        empty = new UnauthenticatedPlayers(Stubs.plugin(null));
+        guarding = new UnauthenticatedPlayers(Stubs.plugin(null));
+        for (int i = 0; i < online; i++) {
+            Player p = Stubs.player(UUID.randomUUID(), "player" + i);
+            authenticated.put(p.getUniqueId(), "user" + i);
+            sessions.bind(p.getUniqueId(), "user" + i, "10.0.0." + (i % 256));
+            loggedIn = p;
+        }
+        waiting = Stubs.player(UUID.randomUUID(), "waiting");
+        guarding.add(waiting);
+
+        world = Stubs.world("world"); // Location only keeps a weak reference
+        from = new Location(world, 100.5, UnauthenticatedPlayers.SKY_HEIGHT, 100.5);
+        loggedInMove = new PlayerMoveEvent(loggedIn, from, from.clone());
+        waitingMove = new PlayerMoveEvent(waiting, from, from.clone());
+    }
+
+    @Benchmark
+    public boolean isAuthenticated() {
+        return authenticated.containsKey(loggedIn.getUniqueId());
+    }
+
+    @Benchmark
+    public boolean isAuthenticatedRegistry() {
+        return sessions.contains(loggedIn.getUniqueId());
+    }
+
+    // Account that isn't logged in: the worst case for the old scan
+    @Benchmark
+    public boolean isUserAlreadyLogged() {
+        return authenticated.containsValue("nobody");
+    }
+
+    @Benchmark
+    public boolean isUserAlreadyLoggedRegistry() {
+        return sessions.isActive("nobody");
+    }
+
+    @Benchmark
+    public Location beforeLoggedIn() {
+        return beforeOnMove(step(loggedInMove));
+    }
+
+    @Benchmark
+    public Location beforeWaiting() {
+        return beforeOnMove(step(waitingMove));
+    }
+
+    @Benchmark
+    public Location afterAllLoggedIn() {
+        PlayerMoveEvent e = step(loggedInMove);
+        empty.onMove(e);
+        return e.getTo();
+    }
+
+    @Benchmark
+    public Location afterWaiting() {
+        PlayerMoveEvent e = step(waitingMove);
+        guarding.onMove(e);
+        return e.getTo();
+    }
+
+    // The player walks one block east; both handlers rewrite the target in place or replace it
+    private PlayerMoveEvent step(PlayerMoveEvent e) {
+        Location to = e.getTo();
+        to.setX(from.getX() + 1);
+        to.setY(from.getY());
+        to.setZ(from.getZ());
+        return e;
+    }
+
+    private Location beforeOnMove(PlayerMoveEvent e) {
+        Player p = e.getPlayer();
+        if (!authenticated.containsKey(p.getUniqueId())) {
+            Location from = e.getFrom();
+            Location to = e.getTo();
+            if (from.getX() != to.getX() || from.getZ() != to.getZ()) {
+                e.setTo(new Location(from.getWorld(), from.getX(), Math.max(from.getY(), UnauthenticatedPlayers.SKY_HEIGHT), from.getZ()));
+            }
+        }
+        return e.getTo();
+    }
+}
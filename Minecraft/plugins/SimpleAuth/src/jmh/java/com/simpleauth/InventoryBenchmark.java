@@ -0,0 +1,71 @@
+package com.simpleauth;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Full 41-slot inventory: legacy Java serialization + Base64 against the binary PlayerState record.
+// stateFingerprint is what autosave pays for a player whose state hasn't changed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InventoryBenchmark {
+    @Param({"false", "true"})
+    boolean compress;
+
+    private PlayerInventory inventory;
+    private PlayerState state;
+    private String legacy;
+    private byte[] record;
+
+    @Setup
+    public void setup() {
+        ItemStack[] contents = Stubs.fullInventory();
+        inventory = Stubs.inventory(contents);
+        state = new PlayerState(contents, "world", 128.5, 64, -391.25, 90f, 12.5f,
+                "http://textures.minecraft.net/texture/5c7e1a3b9d2f4e8a6b0c1d2e3f4a5b6c7d8e9f0a1b2c3d4e5f6a7b8c9d0e1f2a");
+        legacy = InventoryUtils.toBase64(inventory);
+        record = state.encode(compress);
+    }
+
+    @Benchmark
+    public ItemStack[] legacyRoundTrip() {
+        return InventoryUtils.fromBase64(InventoryUtils.toBase64(inventory));
+    }
+
+    @Benchmark
+    public String legacyEncode() {
+        return InventoryUtils.toBase64(inventory);
+    }
+
+    @Benchmark
+    public ItemStack[] legacyDecode() {
+        return InventoryUtils.fromBase64(legacy);
+    }
+
+    @Benchmark
+    public PlayerState stateRoundTrip() throws IOException {
+        return PlayerState.decode(state.encode(compress));
+    }
+
+    @Benchmark
+    public byte[] stateEncode() {
+        return state.encode(compress);
+    }
+
+    @Benchmark
+    public PlayerState stateDecode() throws IOException {
+        return PlayerState.decode(record);
+    }
+
+    @Benchmark
+    public long stateFingerprint() {
+        return state.fingerprint();
+    }
+}
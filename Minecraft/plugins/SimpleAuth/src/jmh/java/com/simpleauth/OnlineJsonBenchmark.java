@@ -0,0 +1,38 @@
+package com.simpleauth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Building the /online body, which OnlineSnapshots does on the main thread for every presence change
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OnlineJsonBenchmark {
+    @Param({"10", "100", "500"})
+    int online;
+
+    private final Map<UUID, PresenceTracker.Presence> presence = new LinkedHashMap<>();
+    private final Map<UUID, String> authenticated = new HashMap<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < online; i++) {
+            UUID id = UUID.randomUUID();
+            presence.put(id, new PresenceTracker.Presence("player" + i, "10.0." + (i / 256) + "." + (i % 256), System.nanoTime()));
+            if (i % 4 != 0) authenticated.put(id, "user" + i); // a few still at the login prompt
+        }
+    }
+
+    @Benchmark
+    public byte[] buildBody() {
+        return OnlineSnapshots.buildBody(presence.entrySet(), authenticated::get, 25565);
+    }
+}
@@ -0,0 +1,42 @@
+package com.simpleauth;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Legacy SHA-256 vs the PBKDF2 cost a login pays on the hash pool
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+    private static final String PASSWORD = "correct horse battery staple";
+    private static final String LEGACY_SALT = "94328208-6820-4d76-b2cf-5201c7b20b4e";
+
+    @Param({"210000"})
+    int iterations;
+
+    private String stored;
+
+    @Setup
+    public void setup() {
+        stored = PasswordUtil.encode(PASSWORD, iterations);
+    }
+
+    @Benchmark
+    public String legacyHash() {
+        return PasswordUtil.hash(PASSWORD, LEGACY_SALT);
+    }
+
+    @Benchmark
+    public String encode() {
+        return PasswordUtil.encode(PASSWORD, iterations);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return PasswordUtil.verify(PASSWORD, stored, null);
+    }
+}
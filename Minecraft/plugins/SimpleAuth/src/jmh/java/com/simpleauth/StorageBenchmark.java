@@ -0,0 +1,119 @@
+package com.simpleauth;
+
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// UserManager's storage side with a realistic account table. UserManager itself needs a real
+// JavaPlugin, so this drives the same backend + AccountStore it uses:
+//   load     - startup: replay the store into the credential index
+//   read     - a login burst: the online players' records read back on demand
+//   session  - start, one autosave of the online players (what saveAll queues), shutdown flush
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+    private static final int ONLINE = 100;
+    private static final long TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Param({"10000", "100000"})
+    int accounts;
+
+    @Param({"journal", "yaml"})
+    String backend;
+
+    private Path dir;
+    private Plugin plugin;
+    private byte[] state;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("simpleauth-bench");
+        plugin = Stubs.plugin(dir.toFile());
+        state = new PlayerState(Stubs.fullInventory(), "world", 10.5, 70, -20.5, 0f, 0f,
+                "http://textures.minecraft.net/texture/5c7e1a3b9d2f").encode(true);
+
+        BackgroundExecutor executor = new BackgroundExecutor(plugin);
+        UserStorage storage = open(executor);
+        storage.start();
+        for (int i = 0; i < accounts; i++) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("password", PasswordUtil.encode("pw" + i, 1));
+            fields.put("state", state);
+            storage.write("user" + i, fields);
+        }
+        storage.close(TIMEOUT_MILLIS);
+        executor.shutdown(TIMEOUT_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public AccountStore load() throws IOException {
+        BackgroundExecutor executor = new BackgroundExecutor(plugin);
+        UserStorage storage = open(executor);
+        AccountStore store = new AccountStore(plugin, storage, 0, user -> false);
+        storage.load(store::replay);
+        executor.shutdown(TIMEOUT_MILLIS);
+        return store;
+    }
+
+    @Benchmark
+    public int read() throws IOException, InterruptedException, ExecutionException {
+        BackgroundExecutor executor = new BackgroundExecutor(plugin);
+        UserStorage storage = open(executor);
+        storage.load((user, fields) -> {});
+        storage.start();
+        int found = 0;
+        for (int i = 0; i < ONLINE; i++) {
+            if (storage.read("user" + i).get().get("state") != null) found++; // byte[] in the journal, Base64 in yaml
+        }
+        storage.close(TIMEOUT_MILLIS);
+        executor.shutdown(TIMEOUT_MILLIS);
+        if (found != ONLINE) throw new IllegalStateException("read " + found + " of " + ONLINE);
+        return found;
+    }
+
+    @Benchmark
+    public void session() {
+        BackgroundExecutor executor = new BackgroundExecutor(plugin);
+        UserStorage storage = open(executor);
+        storage.start();
+        for (int i = 0; i < ONLINE; i++) {
+            Map<String, Object> fields = new LinkedHashMap<>();
+            fields.put("state", state);
+            fields.put("inventory", null);
+            fields.put("lastLocation", null);
+            fields.put("skinUrl", null);
+            storage.write("user" + i, fields);
+        }
+        storage.close(TIMEOUT_MILLIS);
+        executor.shutdown(TIMEOUT_MILLIS);
+    }
+
+    // Same persistence lane the plugin gives its storage
+    private UserStorage open(BackgroundExecutor executor) {
+        BackgroundExecutor.Lane lane = executor.lane("persistence", 1, 256, BackgroundExecutor.Overflow.REJECT);
+        return backend.equals("yaml")
+                ? new YamlUserStorage(plugin, lane, dir.resolve("users.yml").toFile(), 5)
+                : new JournalUserStorage(plugin, lane, dir.resolve("users.journal").toFile(), 200, 30);
+    }
+}
@@ -0,0 +1,200 @@
+package com.simpleauth;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.World;
+import org.bukkit.configuration.serialization.DelegateDeserialization;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+// Just enough Bukkit for the benchmarks: a proxy Server whose UnsafeValues hands out item payloads
+// roughly the size Paper produces, and a no-op plugin manager/scheduler. Real ItemStacks need the
+// server's registries, so items are StubItems standing in for CraftItemStack.
+final class Stubs {
+    private static final Logger LOGGER = Logger.getLogger("SimpleAuth-Bench");
+    private static final Map<Material, byte[]> ITEM_BYTES = new LinkedHashMap<>();
+    private static volatile boolean installed;
+
+    @DelegateDeserialization(ItemStack.class)
+    static final class StubItem extends ItemStack {
+        private final Material type;
+        private final int amount;
+        private final boolean gear;
+
+        StubItem(Material type, int amount, boolean gear) {
+            this.type = type;
+            this.amount = amount;
+            this.gear = gear;
+        }
+
+        @Override public Material getType() { return type; }
+        @Override public int getAmount() { return amount; }
+        @Override public int getMaxStackSize() { return gear ? 1 : 64; }
+        @Override public boolean isEmpty() { return amount <= 0; }
+        @Override public StubItem clone() { return new StubItem(type, amount, gear); }
+        @Override public boolean equals(Object o) { return this == o; }
+        @Override public int hashCode() { return System.identityHashCode(this); }
+    }
+
+    // Typical survival inventory: tools and armor carry enchantments/names, blocks don't
+    private static final Material[] HOTBAR = {
+            Material.DIAMOND_SWORD, Material.DIAMOND_PICKAXE, Material.DIAMOND_AXE, Material.BOW,
+            Material.COOKED_BEEF, Material.TORCH, Material.WATER_BUCKET, Material.SHIELD, Material.ENDER_PEARL
+    };
+    private static final Material[] STORAGE = {
+            Material.COBBLESTONE, Material.OAK_LOG, Material.IRON_INGOT, Material.REDSTONE, Material.ARROW,
+            Material.DIRT, Material.STONE_BRICKS, Material.GOLDEN_CARROT, Material.OBSIDIAN
+    };
+    private static final Material[] ARMOR = {
+            Material.DIAMOND_BOOTS, Material.DIAMOND_LEGGINGS, Material.DIAMOND_CHESTPLATE, Material.DIAMOND_HELMET
+    };
+
+    private Stubs() {}
+
+    static synchronized void install() {
+        if (installed) return;
+        PluginManager pluginManager = stub(PluginManager.class, null);
+        BukkitScheduler scheduler = stub(BukkitScheduler.class, null);
+        UnsafeValues unsafe = stub(UnsafeValues.class, (proxy, method, args) -> switch (method.getName()) {
+            case "serializeItem" -> itemBytes((StubItem) args[0]).clone();
+            case "deserializeItem" -> new StubItem(Material.STONE, 1, false);
+            case "serializeStack" -> stackMap((StubItem) args[0]);
+            case "deserializeStack" -> new StubItem(Material.STONE, 1, false);
+            default -> defaultValue(method.getReturnType());
+        });
+        Server server = stub(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getLogger" -> LOGGER;
+            case "getName", "getVersion" -> "Stub";
+            case "getBukkitVersion" -> "1.21.8-R0.1-SNAPSHOT";
+            case "getUnsafe" -> unsafe;
+            case "getPluginManager" -> pluginManager;
+            case "getScheduler" -> scheduler;
+            case "getOnlinePlayers" -> List.of();
+            case "getPort" -> 25565;
+            default -> defaultValue(method.getReturnType());
+        });
+        try {
+            // Bukkit.setServer also logs Paper build info, which only exists in a real server jar
+            Field field = Bukkit.class.getDeclaredField("server");
+            field.setAccessible(true);
+            field.set(null, server);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot install stub server", e);
+        }
+        installed = true;
+    }
+
+    static Plugin plugin(File dataFolder) {
+        install();
+        return stub(Plugin.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getLogger" -> LOGGER;
+            case "getName" -> "SimpleAuth";
+            case "getDataFolder" -> dataFolder;
+            case "isEnabled" -> true;
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    static Player player(UUID id, String name) {
+        install();
+        return stub(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> id;
+            case "getName" -> name;
+            default -> defaultValue(method.getReturnType());
+        });
+    }
+
+    static World world(String name) {
+        install();
+        return stub(World.class, (proxy, method, args) ->
+                method.getName().equals("getName") ? name : defaultValue(method.getReturnType()));
+    }
+
+    static PlayerInventory inventory(ItemStack[] contents) {
+        install();
+        return stub(PlayerInventory.class, (proxy, method, args) ->
+                method.getName().equals("getContents") ? contents : defaultValue(method.getReturnType()));
+    }
+
+    // 36 storage slots, armor and offhand, every slot filled
+    static ItemStack[] fullInventory() {
+        install();
+        ItemStack[] contents = new ItemStack[41];
+        for (int i = 0; i < 9; i++) contents[i] = new StubItem(HOTBAR[i], i < 4 || i == 7 ? 1 : 16, i < 4 || i == 7);
+        for (int i = 9; i < 36; i++) contents[i] = new StubItem(STORAGE[i % STORAGE.length], 64, false);
+        for (int i = 0; i < 4; i++) contents[36 + i] = new StubItem(ARMOR[i], 1, true);
+        contents[40] = new StubItem(Material.TOTEM_OF_UNDYING, 1, true);
+        return contents;
+    }
+
+    // Enchanted gear serializes to a few hundred bytes of NBT, plain stacks to a few dozen
+    private static synchronized byte[] itemBytes(StubItem item) {
+        return ITEM_BYTES.computeIfAbsent(item.getType(), t -> {
+            int size = item.getMaxStackSize() == 1 ? 320 : 48;
+            byte[] b = new byte[size];
+            new Random(t.ordinal()).nextBytes(b);
+            return b;
+        });
+    }
+
+    private static Map<String, Object> stackMap(StubItem item) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("schema_version", 1);
+        map.put("DataVersion", 4440);
+        map.put("id", "minecraft:" + item.getType().name().toLowerCase());
+        map.put("count", item.getAmount());
+        if (item.getType().getMaxStackSize() == 1) {
+            Map<String, Object> components = new LinkedHashMap<>();
+            components.put("minecraft:enchantments", "{levels:{\"minecraft:unbreaking\":3,\"minecraft:mending\":1}}");
+            components.put("minecraft:custom_name", "'{\"text\":\"Trusty " + item.getType().name().toLowerCase() + "\"}'");
+            components.put("minecraft:damage", 17);
+            map.put("components", components);
+        }
+        return map;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler answers) {
+        return (T) Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> type.getSimpleName() + "Stub";
+                };
+            }
+            if (method.isDefault() && answers == null) return InvocationHandler.invokeDefault(proxy, method, args);
+            return answers != null ? answers.invoke(proxy, method, args) : defaultValue(method.getReturnType());
+        });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) return null;
+        if (type == boolean.class) return false;
+        if (type == void.class) return null;
+        if (type == char.class) return '\0';
+        if (type == long.class) return 0L;
+        if (type == float.class) return 0f;
+        if (type == double.class) return 0d;
+        if (type == byte.class) return (byte) 0;
+        if (type == short.class) return (short) 0;
+        return 0;
+    }
+}
@@ -16,10 +16,61 @@ const AUTH_SECRET = process.env.AUTH_SECRET || "dev-super-secret";
 const AUTH_WINDOW_MS = process.env.AUTH_WINDOW_MS || 5 * 60 * 1000; // 5 minutes
 const STATUS_INTERVAL_MS = process.env.STATUS_INTERVAL_MS || 3 * 60 * 1000; // 3 minutes
 const MINE_PLUGIN_URL = process.env.MINE_PLUGIN_URL || "http://127.0.0.1:27111"; // plugin endpoint
+const ADMISSION_TTL_S = Number(process.env.ADMISSION_TTL_S || 600); // plugin forgets entries not refreshed within this
+const ADMISSION_REFRESH_MS = Number(process.env.ADMISSION_REFRESH_MS || 5 * 60 * 1000); // full resync interval
 
 // --- state tracking ---
 const authorized = new Map(); // username -> { ip, logged, timer, graceTimer }
 
+// --- Plugin admission cache sync ---
+// The plugin refuses connections from sources not authorized here before they reach the game.
+// Changes are pushed as versioned deltas; if the plugin missed one (or restarted) it answers 409
+// and gets the full set. The periodic full sync also refreshes the plugin-side TTLs.
+let admissionVersion = 0;
+let admissionChain = Promise.resolve(); // one sync at a time, in order
+
+function admissionEntries() {
+  return Array.from(authorized.entries()).map(([username, { ip }]) => ({
+    ip,
+    account: username,
+    ttlSeconds: ADMISSION_TTL_S,
+  }));
+}
+
+// Signed like verifyAuth expects, the plugin checks it when its local.secret is set
+async function postAdmission(body) {
+  const data = JSON.stringify(body);
+  const timestamp = String(Date.now());
+  const signature = crypto.createHmac("sha256", AUTH_SECRET).update(timestamp + ":" + data).digest("hex");
+  const res = await axios.post(MINE_PLUGIN_URL + "/admission", data, {
+    timeout: 1500,
+    headers: { "Content-Type": "application/json", "x-timestamp": timestamp, "x-signature": signature },
+    validateStatus: (s) => s === 200 || s === 409,
+  });
+  return res.status === 200;
+}
+
+function syncAdmission(delta) {
+  admissionChain = admissionChain.then(async () => {
+    try {
+      if (delta && admissionVersion > 0) {
+        const next = admissionVersion + 1;
+        if (await postAdmission({ base: admissionVersion, version: next, ...delta })) {
+          admissionVersion = next;
+          return;
+        }
+      }
+      const next = admissionVersion + 1;
+      await postAdmission({ full: true, version: next, allow: admissionEntries() });
+      admissionVersion = next;
+    } catch (err) {
+      admissionVersion = 0; // plugin unreachable, start over with a full sync
+      console.warn("⚠️ Admission sync failed:", err.message);
+    }
+  });
+  return admissionChain;
+}
+
 // --- Middleware: shared signature auth ---
 function verifyAuth(req, res, next) {
   const signature = req.headers["x-signature"];
@@ -57,6 +108,43 @@ function requireLocalhost(req, res, next) {
   res.status(403).json({ ok: false, error: "forbidden" });
 }
 
+// --- Alias helper ---
+// One authorization covers the root account and its aliases "<root>_1" and "<root>_2".
+// Returns { root, aliasNum }, or null for a missing name.
+function getRoot(username) {
+  if (typeof username !== "string" || !username) return null;
+  if (authorized.has(username)) return { root: username, aliasNum: 0 };
+  const m = /^(.+)_([12])$/.exec(username);
+  if (m) return { root: m[1], aliasNum: Number(m[2]) };
+  return { root: username, aliasNum: 0 };
+}
+
+// --- / (raw presence events pushed by the plugin) ---
+// Single events, or {"event": "batch", "events": [...]} when several were queued together.
+app.post("/", requireLocalhost, (req, res) => {
+  const body = req.body || {};
+  const events = body.event === "batch" && Array.isArray(body.events) ? body.events : [body];
+  for (const e of events) {
+    if (e.event === "reconcile") console.log(`🔄 Plugin reports ${(e.players || []).length} player(s) online`);
+    else console.log(`📡 ${e.event} ${e.player} (${e.ip})`);
+  }
+  return res.json({ ok: true });
+});
+
+// --- /ready (pushed by the plugin once it accepts logins) ---
+// The admission cache starts empty on a fresh instance, so it gets the full set right away.
+let mineReady = null; // { at, startupMillis } of the last ready push
+
+app.post("/ready", requireLocalhost, (req, res) => {
+  const { readyAfterMillis, stages } = req.body || {};
+  mineReady = { at: Date.now(), startupMillis: readyAfterMillis };
+  const timings = (stages || []).map((s) => `${s.name} ${Math.round(s.millis)}ms`).join(", ");
+  console.log(`🚀 MineServer ready after ${readyAfterMillis}ms (${timings})`);
+
+  syncAdmission(null);
+  return res.json({ ok: true });
+});
+
 // --- /status (checks MineServer plugin) ---
 app.get("/status", async (req, res) => {
   try {
@@ -68,6 +156,7 @@ app.get("/status", async (req, res) => {
       ok: true,
       port: minePort,
       players,
+      ready: mineReady,
     });
   } catch (err) {
     console.error("Status check failed:", err.message);
@@ -94,11 +183,13 @@ app.post("/authorize", verifyAuth, async (req, res) => {
     if (entry && !entry.logged) {
       console.log(`⏳ Authorization for ${username} expired (no login after ${AUTH_WINDOW_MS/60000} min)`);
       authorized.delete(username);
+      syncAdmission({ revoke: [{ ip, account: username }] });
       invokeFirewallLambda("revoke", ip, username);
     }
   }, AUTH_WINDOW_MS);
 
   authorized.set(username, { ip, logged: false, timer, graceTimer: null });
+  syncAdmission({ allow: [{ ip, account: username, ttlSeconds: ADMISSION_TTL_S }] });
   console.log(`✅ Authorized ${username} (${ip}) for ${AUTH_WINDOW_MS/60000} minutes`);
 
   const result = await invokeFirewallLambda("authorize", ip, username);
@@ -153,6 +244,7 @@ app.post("/deauthorize", requireLocalhost, async (req, res) => {
     if (!online) {
       console.log(`⌛ Grace expired for ${root}, revoking`);
       authorized.delete(root);
+      syncAdmission({ revoke: [{ ip: e.ip, account: root }] });
       invokeFirewallLambda("revoke", e.ip, root);
     }
   }, AUTH_WINDOW_MS);
@@ -211,6 +303,7 @@ app.post("/deauthorize", requireLocalhost, async (req, res) => {
     if (e && !online) {
       console.log(`⌛ Player ${root} grace expired (no relog)`);
       authorized.delete(root);
+      syncAdmission({ revoke: [{ ip: e.ip, account: root }] });
       invokeFirewallLambda("revoke", e.ip, root);
     }
   }, AUTH_WINDOW_MS);
@@ -274,6 +367,7 @@ function hasActivePlayersOrTimers() {
 
 
 setInterval(checkServerStatus, STATUS_INTERVAL_MS);
+setInterval(() => syncAdmission(null), ADMISSION_REFRESH_MS);
 
 // --- Debug helper ---
 app.get("/authorized", (req, res) => {
@@ -286,4 +380,7 @@ app.get("/authorized", (req, res) => {
 });
 
 // --- Start server ---
-app.listen(PORT, () => console.log(`🧩 MineSupervisor listening on port ${PORT}`));
\ No newline at end of file
+app.listen(PORT, () => {
+  console.log(`🧩 MineSupervisor listening on port ${PORT}`);
+  syncAdmission(null);
+});
\ No newline at end of file